@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import java.lang.reflect.*;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.IntFunction;
@@ -35,6 +37,30 @@ public interface Action {
 
     void execute(Context ctx, Logger log);
 
+    /**
+     * start execution without waiting for it to finish.<br/>
+     * default runs {@link #execute(Context, Logger)} on {@link Context#executor()},
+     * actions with a native asynchronous API should override this.
+     * Cancelling the returned stage interrupts the running action.
+     */
+    default CompletionStage<Void> executeAsync(Context ctx, Logger log) {
+        var f = new CompletableFuture<Void>();
+        var task = ctx.executor().submit(() -> {
+            try {
+                execute(ctx, log);
+                f.complete(null);
+            } catch (Throwable ex) {
+                f.completeExceptionally(ex);
+            } finally {
+                ctx.releaseThread();
+            }
+        });
+        f.whenComplete((v, ex) -> {
+            if (f.isCancelled()) task.cancel(true);
+        });
+        return f;
+    }
+
     default Optional<Exception> run(Context ctx) {
         var log = ctx.log();
         var trace = log.isTraceEnabled();
@@ -50,6 +76,7 @@ public interface Action {
             return Optional.empty();
         } catch (Exception ex) {
             log.error("execute {}", action(), ex);
+            ctx.flush(action(), ex);
             return Optional.of(ex);
         } finally {
             if (trace) {
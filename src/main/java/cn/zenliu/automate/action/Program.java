@@ -0,0 +1,310 @@
+package cn.zenliu.automate.action;
+
+import cn.zenliu.automate.context.Context;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Compiled form of an ordered action list.<br/>
+ * Plain actions become {@link #EXEC} instructions, control-flow actions ({@link Block}) are flattened into
+ * {@link #JUMP}, {@link #BRANCH} and {@link #TRY} instructions, so a program runs in a single loop without recursion.<br/>
+ * Instructions are stored as parallel arrays indexed by program counter.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-02
+ */
+public interface Program {
+    /**
+     * execute the action in operand.
+     */
+    int EXEC = 0;
+    /**
+     * jump to target.
+     */
+    int JUMP = 1;
+    /**
+     * jump to target when the predicate in operand is false.
+     */
+    int BRANCH = 2;
+    /**
+     * push an exception handler at target, operand is the optional variable name to store the caught exception.
+     */
+    int TRY = 3;
+    /**
+     * pop current exception handler then jump to target.
+     */
+    int END_TRY = 4;
+
+    /**
+     * an action which compiles itself into instructions instead of executing as a single step.
+     */
+    interface Block extends Action {
+        void compile(Emitter e);
+
+        /**
+         * run standalone, for example as a global init action.
+         */
+        @Override
+        default void execute(Context ctx, Logger log) {
+            Program.compile(action(), List.of(this)).run(ctx, log, false);
+        }
+    }
+
+    /**
+     * an action which can prepare its work ahead, such as prefetching a navigation target.<br/>
+     * The program hints it once when execution enters the straight-line run of instructions leading to it.
+     */
+    interface Lookahead extends Action {
+        /**
+         * best effort preparation, must not change observable context state.
+         */
+        void prefetch(Context ctx, Logger log);
+    }
+
+    /**
+     * instruction writer used by {@link Block#compile(Emitter)}.
+     */
+    interface Emitter {
+        /**
+         * @return address of next instruction
+         */
+        int here();
+
+        /**
+         * @return address of emitted instruction
+         */
+        int emit(int code, int target, Object operand);
+
+        /**
+         * set jump target of an emitted instruction.
+         */
+        void patch(int at, int target);
+
+        default void compile(Action act) {
+            if (act instanceof Block b) b.compile(this);
+            else emit(EXEC, -1, act);
+        }
+
+        default void compile(List<Action> acts) {
+            for (var act : acts) compile(act);
+        }
+    }
+
+    static Program compile(String name, List<Action> actions) {
+        var e = new emitter();
+        e.compile(actions);
+        return e.build(name);
+    }
+
+    String name();
+
+    int size();
+
+    /**
+     * @param profile collect execution count and time of each instruction.
+     */
+    void run(Context ctx, Logger log, boolean profile);
+
+    /**
+     * @return profile report of executed instructions.
+     */
+    String profile();
+
+    final class emitter implements Emitter {
+        private final List<int[]> ins = new ArrayList<>();
+        private final List<Object> operands = new ArrayList<>();
+
+        @Override
+        public int here() {
+            return ins.size();
+        }
+
+        @Override
+        public int emit(int code, int target, Object operand) {
+            ins.add(new int[]{code, target});
+            operands.add(operand);
+            return ins.size() - 1;
+        }
+
+        @Override
+        public void patch(int at, int target) {
+            ins.get(at)[1] = target;
+        }
+
+        Program build(String name) {
+            var n = ins.size();
+            var code = new int[n];
+            var target = new int[n];
+            var tries = 0;
+            for (int i = 0; i < n; i++) {
+                var x = ins.get(i);
+                code[i] = x[0];
+                target[i] = x[1];
+                if (x[0] == TRY) tries++;
+                if (x[0] != EXEC && (x[1] < 0 || x[1] > n))
+                    throw new IllegalStateException("unresolved jump target at " + i + " of " + name);
+            }
+            var ops = operands.toArray();
+            return new program(name, code, target, ops, hints(code, ops), tries, new AtomicLongArray(n), new AtomicLongArray(n));
+        }
+
+        /**
+         * for each {@link Lookahead}, hint it at the first instruction of the straight-line run before it,
+         * the run starts after a previous lookahead or a control-flow instruction.
+         */
+        private static int[] hints(int[] code, Object[] ops) {
+            var hint = new int[code.length];
+            Arrays.fill(hint, -1);
+            var start = 0;
+            for (int i = 0; i < code.length; i++) {
+                if (code[i] != EXEC) {
+                    start = i + 1;
+                } else if (ops[i] instanceof Lookahead) {
+                    if (start < i) hint[start] = i;
+                    start = i + 1;
+                }
+            }
+            return hint;
+        }
+    }
+
+    /**
+     * profile counters are shared by all threads running the program, so they are updated atomically.
+     */
+    record program(
+            String name,
+            int[] code,
+            int[] target,
+            Object[] operand,
+            int[] hint,
+            int tries,
+            AtomicLongArray hits,
+            AtomicLongArray cost
+    ) implements Program {
+        @Override
+        public int size() {
+            return code.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run(Context ctx, Logger log, boolean profile) {
+            var code = this.code;
+            var target = this.target;
+            var operand = this.operand;
+            var n = code.length;
+            var handlers = tries == 0 ? null : new int[tries];
+            var sp = 0;
+            var pc = 0;
+            var trace = log.isTraceEnabled();
+            var rec = ctx.recorder();
+            while (pc < n) {
+                try {
+                    while (pc < n) {
+                        var at = pc;
+                        var begin = profile ? System.nanoTime() : 0L;
+                        switch (code[pc]) {
+                            case EXEC -> {
+                                if (hint[pc] >= 0) prefetch((Lookahead) operand[hint[pc]], ctx, log);
+                                var act = (Action) operand[pc];
+                                if (rec != null) recorded(rec, act, ctx, log, trace);
+                                else if (trace) traced(act, ctx, log);
+                                else act.execute(ctx, log);
+                                pc++;
+                            }
+                            case JUMP -> pc = target[pc];
+                            case BRANCH -> pc = ((Predicate<Context>) operand[pc]).test(ctx) ? pc + 1 : target[pc];
+                            case TRY -> handlers[sp++] = pc++;
+                            case END_TRY -> {
+                                sp--;
+                                pc = target[pc];
+                            }
+                            default -> throw new IllegalStateException("invalid instruction " + code[pc] + " at " + pc);
+                        }
+                        if (profile) {
+                            hits.incrementAndGet(at);
+                            cost.addAndGet(at, System.nanoTime() - begin);
+                        }
+                    }
+                } catch (Exception ex) {
+                    if (sp == 0) throw ex;
+                    var h = handlers[--sp];
+                    if (trace) log.trace("{} caught by handler at {}: {}", name, h, ex.getMessage());
+                    if (operand[h] instanceof String v) {
+                        ctx.invalidate(v);
+                        ctx.put(v, ex);
+                    }
+                    pc = target[h];
+                }
+            }
+        }
+
+        private void recorded(Context.Recorder rec, Action act, Context ctx, Logger log, boolean trace) {
+            var begin = System.nanoTime();
+            try {
+                if (trace) traced(act, ctx, log);
+                else act.execute(ctx, log);
+            } catch (Exception ex) {
+                rec.record(ctx, name, act, System.nanoTime() - begin, ex);
+                throw ex;
+            }
+            rec.record(ctx, name, act, System.nanoTime() - begin, null);
+        }
+
+        private void prefetch(Lookahead act, Context ctx, Logger log) {
+            try {
+                act.prefetch(ctx, log);
+            } catch (Exception ex) {
+                log.debug("prefetch of {}.{} failed", name, act.action(), ex);
+            }
+        }
+
+        private void traced(Action act, Context ctx, Logger log) {
+            log.trace("will execute action {}.{}", name, act.action());
+            Set<String> keys = new HashSet<>(ctx.vars().keySet());
+            act.execute(ctx, log);
+            ctx.vars().forEach((k, v) -> {
+                if (!keys.contains(k)) log.trace("{}.{} write {} : {}", name, act.action(), k, v);
+            });
+            log.trace("{}.{} done", name, act.action());
+        }
+
+        @Override
+        public String profile() {
+            var b = new StringBuilder();
+            b.append("profile of ").append(name).append(":\n");
+            for (int i = 0; i < code.length; i++) {
+                var h = hits.get(i);
+                if (h == 0) continue;
+                var c = cost.get(i);
+                b.append(String.format("%4d %-8s %-24s hits=%-6d total=%.3fms avg=%.3fms%n",
+                        i,
+                        switch (code[i]) {
+                            case EXEC -> "EXEC";
+                            case JUMP -> "JUMP";
+                            case BRANCH -> "BRANCH";
+                            case TRY -> "TRY";
+                            case END_TRY -> "END_TRY";
+                            default -> "?";
+                        },
+                        code[i] == EXEC ? ((Action) operand[i]).action() : "-> " + target[i],
+                        h,
+                        c / 1e6,
+                        c / 1e6 / h));
+            }
+            return b.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Program[" + name + ", size=" + code.length + ", code=" + Arrays.toString(code) + "]";
+        }
+    }
+}
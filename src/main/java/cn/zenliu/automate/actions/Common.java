@@ -1,14 +1,23 @@
 package cn.zenliu.automate.actions;
 
 import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.action.Program;
 import cn.zenliu.automate.context.Conf;
 import cn.zenliu.automate.context.Context;
+import cn.zenliu.automate.expr.Expr;
 import cn.zenliu.automate.notation.Info;
 import com.google.auto.service.AutoService;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * @author Zen.Liu
@@ -16,6 +25,7 @@ import java.time.Duration;
  */
 @SuppressWarnings("unused")
 public interface Common {
+    String FuturePrefix = "Future::";
 
     /**
      * @author Zen.Liu
@@ -27,7 +37,7 @@ public interface Common {
     record ShowVar(
             @Info(value = "variable name")
             String name,
-            @Info(value = "type of variable", optional = true, values = {"1:playwright", "2:chrome", "3:page", "4:screen"})
+            @Info(value = "type of variable, browser shows the connection of chrome or else the launched browser", optional = true, values = {"1:playwright", "2:browser", "3:page", "4:screen"})
             Integer type
     ) implements Action {
 
@@ -43,7 +53,10 @@ public interface Common {
                 log.info("variable {}: {}", name, ctx.var(name));
             } else switch (type) {
                 case 1 -> log.info("variable {}:{} ", Playwrights.PLAYWRIGHT, ctx.var(Playwrights.PLAYWRIGHT));
-                case 2 -> log.info("variable {}:{} ", Playwrights.BROWSER, ctx.var(Playwrights.BROWSER));
+                case 2 -> {
+                    var b = ctx.vars().containsKey(Playwrights.CONNECTION) ? Playwrights.CONNECTION : Playwrights.BROWSER;
+                    log.info("variable {}:{} ", b, ctx.var(b));
+                }
                 case 3 -> log.info("variable {}:{} ", name, ctx.var(Playwrights.PagePrefix + name));
                 case 4 -> log.info("variable {}:{} ", name, ctx.var(SikuliX.ScreenPrefix + name));
                 default -> log.error("unsupported type {}", type);
@@ -172,16 +185,21 @@ public interface Common {
             @Info(value = "error message")
             String message,
             @Info(value = "value is regex pattern", optional = true)
-            Boolean regex
+            Boolean regex,
+            @Info(value = "regex pattern to match instead of value, compiled from value when regex is true", optional = true, read = Expr.class, from = "MaybePattern")
+            Pattern pattern
     ) implements Action {
+        public TextMatch {
+            if (pattern == null && Boolean.TRUE.equals(regex)) pattern = Pattern.compile(value);
+        }
 
         public TextMatch() {
-            this(null, null, null, null);
+            this(null, null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx ,Logger log) {
-            if (ctx.var(name, String.class).filter(x -> regex != null ? x.matches(value) : x.equals(value)).isEmpty()) {
+            if (ctx.var(name, String.class).filter(x -> pattern != null ? pattern.matcher(x).matches() : x.equals(value)).isEmpty()) {
                 throw new IllegalStateException(message);
             }
         }
@@ -199,49 +217,311 @@ public interface Common {
             @Info(value = "error message")
             String message,
             @Info(value = "value is regex pattern", optional = true)
-            Boolean regex
+            Boolean regex,
+            @Info(value = "regex pattern to match instead of value, compiled from value when regex is true", optional = true, read = Expr.class, from = "MaybePattern")
+            Pattern pattern
     ) implements Action {
+        public TextCheck {
+            if (pattern == null && Boolean.TRUE.equals(regex)) pattern = Pattern.compile(value);
+        }
 
         public TextCheck() {
-            this(null, null, null, null, null);
+            this(null, null, null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx ,Logger log) {
-            ctx.put(name, ctx.var(var, String.class).filter(x -> regex != null ? x.matches(value) : x.equals(value)).isEmpty());
+            ctx.put(name, ctx.var(var, String.class).filter(x -> pattern != null ? pattern.matcher(x).matches() : x.equals(value)).isPresent());
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("require an expression is true")
+    record Assert(
+            @Info(value = "condition expression", read = Expr.class, from = "Require")
+            Expr expr,
+            @Info(value = "error message")
+            String message
+    ) implements Action {
+
+        public Assert() {
+            this(null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            if (!expr.test(ctx)) {
+                throw new IllegalStateException(message);
+            }
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("evaluate an expression, store result in context as name")
+    record Eval(
+            @Info(value = "expression", read = Expr.class, from = "Require")
+            Expr expr,
+            @Info(value = "result variable name")
+            String name
+    ) implements Action {
+
+        public Eval() {
+            this(null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var v = expr.eval(ctx);
+            ctx.invalidate(name);
+            if (v != null) ctx.put(name, v);
         }
     }
 
     @AutoService(Action.class)
-    @Info("condition action for a boolean variable")
+    @Info("condition action for a boolean variable or an expression")
     record IfElse(
-            @Info(value = "a boolean variable name")
+            @Info(value = "a boolean variable name", optional = true)
             String var,
+            @Info(value = "condition expression, used instead of var", optional = true)
+            Expr condition,
             @Info(value = "when true execute")
             Action whenTrue,
             @Info(value = "when false execute")
             Action whenFalse
-    ) implements Action {
+    ) implements Program.Block {
         @Override
         public IfElse make(Conf c) {
-            var var = c.string(this.var).orElseThrow(() -> new IllegalArgumentException("var required but missing"));
+            var var = c.string("var").orElse(null);
+            var cond = c.string("condition").map(Expr::parse).orElse(null);
+            if (var == null && cond == null) throw new IllegalArgumentException("var or condition required but missing");
             var ot = c.object("whenTrue").orElseThrow(() -> new IllegalArgumentException("whenTrue required but missing"));
             var of = c.object("whenFalse").orElseThrow(() -> new IllegalArgumentException("whenFalse required but missing"));
             var at = Action.parseConf(ot);
             var af = Action.parseConf(of);
-            return new IfElse(var, at, af);
+            return new IfElse(var, cond, at, af);
         }
 
         public IfElse() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void compile(Program.Emitter e) {
+            var branch = e.emit(Program.BRANCH, -1, condition != null ? condition
+                    : (Predicate<Context>) ctx -> ctx.require(var, Boolean.class));
+            e.compile(whenTrue);
+            var jump = e.emit(Program.JUMP, -1, null);
+            e.patch(branch, e.here());
+            e.compile(whenFalse);
+            e.patch(jump, e.here());
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("loop actions while a boolean variable or an expression is true")
+    record Loop(
+            @Info(value = "a boolean variable name, checked before each round", optional = true)
+            String var,
+            @Info(value = "condition expression checked before each round, used instead of var", optional = true)
+            Expr condition,
+            @Info(value = "actions to execute in each round")
+            List<Action> actions
+    ) implements Program.Block {
+        @Override
+        public Loop make(Conf c) {
+            var var = c.string("var").orElse(null);
+            var cond = c.string("condition").map(Expr::parse).orElse(null);
+            if (var == null && cond == null) throw new IllegalArgumentException("var or condition required but missing");
+            var acts = c.objects("actions").orElseThrow(() -> new IllegalArgumentException("actions required but missing"));
+            return new Loop(var, cond, acts.stream().map(Action::parseConf).toList());
+        }
+
+        public Loop() {
             this(null, null, null);
         }
 
         @Override
-        public void execute(Context ctx , Logger log) {
-            if (ctx.require(var, Boolean.class)) {
-                whenTrue.execute(ctx,log);
-            } else {
-                whenFalse.execute(ctx,log);
+        public void compile(Program.Emitter e) {
+            var begin = e.here();
+            var branch = e.emit(Program.BRANCH, -1, condition != null ? condition
+                    : (Predicate<Context>) ctx -> ctx.var(var, Boolean.class).orElse(false));
+            e.compile(actions);
+            e.emit(Program.JUMP, begin, null);
+            e.patch(branch, e.here());
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("execute actions, when any failure execute the catch actions")
+    record TryCatch(
+            @Info(value = "actions to execute")
+            List<Action> actions,
+            @Info(value = "actions to execute on failure", optional = true)
+            List<Action> failure,
+            @Info(value = "variable name to store the caught exception", optional = true)
+            String error
+    ) implements Program.Block {
+        @Override
+        public TryCatch make(Conf c) {
+            var acts = c.objects("actions").orElseThrow(() -> new IllegalArgumentException("actions required but missing"));
+            var fail = c.objects("failure").orElse(List.of());
+            return new TryCatch(
+                    acts.stream().map(Action::parseConf).toList(),
+                    fail.stream().map(Action::parseConf).toList(),
+                    c.string("error").orElse(null));
+        }
+
+        public TryCatch() {
+            this(null, null, null);
+        }
+
+        @Override
+        public void compile(Program.Emitter e) {
+            var handler = e.emit(Program.TRY, -1, error);
+            e.compile(actions);
+            var done = e.emit(Program.END_TRY, -1, null);
+            e.patch(handler, e.here());
+            e.compile(failure);
+            e.patch(done, e.here());
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("start an action without waiting, use 'await' to join. actions sharing a page or screen must not run at the same time.")
+    record Async(
+            @Info(value = "name of pending result, automatic prefix with '" + FuturePrefix + "'")
+            String name,
+            @Info(value = "action to start")
+            Action task
+    ) implements Action {
+        @Override
+        public Async make(Conf c) {
+            var name = c.string("name").orElseThrow(() -> new IllegalArgumentException("name required but missing"));
+            var act = c.object("task").orElseThrow(() -> new IllegalArgumentException("task required but missing"));
+            return new Async(name, Action.parseConf(act));
+        }
+
+        public Async() {
+            this(null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var name = FuturePrefix + this.name;
+            ctx.mustNotExists(name);
+            if (log.isTraceEnabled()) log.trace("start {} as {}", task.action(), name);
+            ctx.put(name, task.executeAsync(ctx, log).toCompletableFuture());
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("wait for actions started by 'async', fails with the first failure.")
+    record Await(
+            @Info(value = "names of pending results, default all pending", optional = true, read = Conf.class, from = "MaybeSetString")
+            Set<String> names,
+            @Info(value = "max wait time, default forever", optional = true)
+            Duration timeout
+    ) implements Action {
+
+        public Await() {
+            this(null, null);
+        }
+
+        @SneakyThrows
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var keys = names == null
+                    ? ctx.vars().keySet().stream().filter(k -> k.startsWith(FuturePrefix)).toList()
+                    : names.stream().map(n -> FuturePrefix + n).toList();
+            var fs = new CompletableFuture<?>[keys.size()];
+            for (int i = 0; i < fs.length; i++) fs[i] = ctx.require(keys.get(i), CompletableFuture.class);
+            if (log.isTraceEnabled()) log.trace("await {}", keys);
+            var all = CompletableFuture.allOf(fs);
+            try {
+                if (timeout == null) all.get();
+                else all.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException ex) {
+                throw ex.getCause();
+            } catch (TimeoutException ex) {
+                var pending = new ArrayList<String>();
+                for (int i = 0; i < fs.length; i++) {
+                    if (fs[i].isDone()) continue;
+                    fs[i].cancel(true);
+                    pending.add(keys.get(i).substring(FuturePrefix.length()));
+                }
+                throw new IllegalStateException("await timeout after " + timeout + ", cancelled " + pending, ex);
+            } finally {
+                keys.forEach(ctx::invalidate);
+            }
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("execute action lists at the same time, fails fast and cancels other branches. branches must not share a page or screen.")
+    record Parallel(
+            @Info(value = "list of action lists")
+            List<Program> branches,
+            @Info(value = "max execution time, default forever", optional = true)
+            Duration timeout
+    ) implements Action {
+        @Override
+        public Parallel make(Conf c) {
+            var bs = c.objectLists("branches").orElseThrow(() -> new IllegalArgumentException("branches required but missing"));
+            if (bs.isEmpty()) throw new IllegalArgumentException("branches should not be empty");
+            var ps = new ArrayList<Program>(bs.size());
+            for (int i = 0; i < bs.size(); i++) {
+                ps.add(Program.compile("branch#" + i, bs.get(i).stream().map(Action::parseConf).toList()));
+            }
+            return new Parallel(ps, c.hasPath("timeout") ? c.getDuration("timeout") : null);
+        }
+
+        public Parallel() {
+            this(null, null);
+        }
+
+        @SneakyThrows
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var n = branches.size();
+            var done = new ExecutorCompletionService<Void>(ctx.executor());
+            var exit = new CountDownLatch(n);
+            var running = new Thread[n];
+            var stop = new AtomicBoolean();
+            var deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+            if (log.isTraceEnabled()) log.trace("start {} branches", n);
+            try {
+                for (int i = 0; i < n; i++) {
+                    var b = branches.get(i);
+                    var at = i;
+                    done.submit(() -> {
+                        synchronized (running) {
+                            running[at] = Thread.currentThread();
+                        }
+                        try {
+                            if (!stop.get()) b.run(ctx, log, false);
+                            return null;
+                        } finally {
+                            synchronized (running) {
+                                running[at] = null;
+                            }
+                            ctx.releaseThread();
+                            exit.countDown();
+                        }
+                    });
+                }
+                for (int i = 0; i < n; i++) {
+                    var f = timeout == null ? done.take() : done.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (f == null) throw new TimeoutException("parallel branches not finished in " + timeout);
+                    f.get();
+                }
+            } catch (ExecutionException ex) {
+                throw ex.getCause();
+            } finally {
+                stop.set(true);
+                synchronized (running) {
+                    for (var t : running) if (t != null) t.interrupt();
+                }
+                exit.await();
             }
         }
     }
@@ -0,0 +1,305 @@
+package cn.zenliu.automate.actions;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import cn.zenliu.automate.expr.JsonPath;
+import cn.zenliu.automate.http.Client;
+import cn.zenliu.automate.notation.Info;
+import com.google.auto.service.AutoService;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP actions on the JDK client, for cases calling APIs only, without starting a browser.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-21
+ */
+public interface Http {
+    String HTTP_CLIENT = "HttpClient";
+
+    /**
+     * @return shared client, created on first use with HTTP/2 and 64 requests in flight. Unique named as {@value #HTTP_CLIENT}.
+     */
+    static Client client(Context ctx) {
+        var v = ctx.var(HTTP_CLIENT, Client.class);
+        if (v.isPresent()) return v.get();
+        return ctx.computeIfAbsent(HTTP_CLIENT, Client.class, () -> new HttpClient().create(ctx.log()));
+    }
+
+    static HttpRequest request(String method, String url, Map<String, String> headers, String body, Duration timeout) {
+        var b = HttpRequest.newBuilder(URI.create(url))
+                .method(method == null || method.isBlank() ? "GET" : method.toUpperCase(),
+                        body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (headers != null) headers.forEach(b::header);
+        if (timeout != null) b.timeout(timeout);
+        return b.build();
+    }
+
+    @AutoService(Action.class)
+    @Info("configure the shared http client of fetch actions. Unique named as " + HTTP_CLIENT + ".")
+    record HttpClient(
+            @Info(value = "prefer HTTP/2, default true", optional = true)
+            Boolean http2,
+            @Info(value = "max requests in flight, others wait. default 64", optional = true)
+            Integer concurrency,
+            @Info(value = "connect timeout, default 10s", optional = true)
+            Duration connect,
+            @Info(value = "follow redirects except https to http, default true", optional = true)
+            Boolean redirect
+    ) implements Action {
+        public HttpClient() {
+            this(null, null, null, null);
+        }
+
+        Client create(Logger log) {
+            var http = java.net.http.HttpClient.newBuilder()
+                    .version(http2 == null || http2 ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(connect == null ? Duration.ofSeconds(10) : connect)
+                    .followRedirects(redirect == null || redirect ? java.net.http.HttpClient.Redirect.NORMAL : java.net.http.HttpClient.Redirect.NEVER)
+                    .build();
+            return new Client(log, http, concurrency == null ? 64 : concurrency);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(HTTP_CLIENT);
+            var c = create(log);
+            if (log.isTraceEnabled()) log.trace("create {}", c);
+            ctx.put(HTTP_CLIENT, c);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("send a request by the shared http client. the body is streamed to file, parsed while received for json paths, or stored as text.")
+    record Fetch(
+            @Info(value = "url")
+            String url,
+            @Info(value = "request method, default GET", optional = true)
+            String method,
+            @Info(value = "request headers", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> headers,
+            @Info(value = "body text", optional = true)
+            String body,
+            @Info(value = "file to stream body to", optional = true)
+            String file,
+            @Info(value = "var name to store status code", optional = true)
+            String status,
+            @Info(value = "var name to store body text", optional = true)
+            String response,
+            @Info(value = "var names to json paths of body to store, such as '$.data.items[0].id'", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> extract,
+            @Info(value = "request timeout", optional = true)
+            Duration timeout
+    ) implements Action {
+        public Fetch() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+
+        @SneakyThrows
+        HttpResponse.BodyHandler<?> handler() {
+            if (file != null && !file.isBlank()) {
+                if (response != null || extract != null) throw new IllegalArgumentException("response and extract not allowed with file");
+                var f = Path.of(file);
+                if (f.getParent() != null) Files.createDirectories(f.getParent());
+                return HttpResponse.BodyHandlers.ofFile(f);
+            }
+            if (response == null && extract != null && !extract.isEmpty()) return HttpResponse.BodyHandlers.ofInputStream();
+            if (response == null) return HttpResponse.BodyHandlers.discarding();
+            return HttpResponse.BodyHandlers.ofString();
+        }
+
+        @SneakyThrows
+        void store(Context ctx, Logger log, HttpResponse<?> r, long begin) {
+            if (log.isTraceEnabled()) log.trace("{} {} -> {} in {}ms", r.request().method(), url, r.statusCode(), (System.nanoTime() - begin) / 1_000_000);
+            if (status != null && !status.isBlank()) {
+                ctx.invalidate(status);
+                ctx.put(status, r.statusCode());
+            }
+            JsonElement root = null;
+            if (r.body() instanceof InputStream in) {
+                try (var rd = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    root = JsonParser.parseReader(rd);
+                }
+            } else if (r.body() instanceof String text) {
+                ctx.invalidate(response);
+                ctx.put(response, text);
+                if (extract != null && !extract.isEmpty()) root = JsonParser.parseString(text);
+            }
+            if (root == null) return;
+            for (var e : extract.entrySet()) {
+                var v = JsonPath.value(JsonPath.parse(e.getValue()).select(root));
+                ctx.invalidate(e.getKey());
+                if (v != null) ctx.put(e.getKey(), v);
+            }
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var begin = System.nanoTime();
+            store(ctx, log, client(ctx).send(request(method, url, headers, body, timeout), handler()), begin);
+        }
+
+        /**
+         * sends without holding a thread while waiting for a permit or the response.
+         */
+        @Override
+        public CompletionStage<Void> executeAsync(Context ctx, Logger log) {
+            var begin = System.nanoTime();
+            CompletableFuture<? extends HttpResponse<?>> sending;
+            try {
+                sending = client(ctx).sendAsync(request(method, url, headers, body, timeout), handler());
+            } catch (RuntimeException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            var done = sending.thenAcceptAsync(r -> {
+                try {
+                    store(ctx, log, r, begin);
+                } finally {
+                    ctx.releaseThread();
+                }
+            }, ctx.executor());
+            // a cancelled fetch leaves the client queue or aborts the exchange
+            done.whenComplete((v, ex) -> {
+                if (done.isCancelled()) sending.cancel(true);
+            });
+            return done;
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("load test an url by the shared http client, report requests per second and latency percentiles.")
+    record FetchBench(
+            @Info(value = "url")
+            String url,
+            @Info(value = "request method, default GET", optional = true)
+            String method,
+            @Info(value = "request headers", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> headers,
+            @Info(value = "body text", optional = true)
+            String body,
+            @Info(value = "measured requests, default 1000", optional = true)
+            Integer requests,
+            @Info(value = "requests in flight, default the client concurrency", optional = true)
+            Integer concurrency,
+            @Info(value = "requests before measuring, to open connections. default the concurrency", optional = true)
+            Integer warmup,
+            @Info(value = "max time of the whole run, default 5m", optional = true)
+            Duration timeout,
+            @Info(value = "var name to store report map: requests, errors, rps, p50, p90, p99, max in milliseconds of successful requests", optional = true)
+            String name
+    ) implements Action {
+        public FetchBench() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+
+        /**
+         * @param lat latency of each request in nanoseconds from leaving the client queue, -1 for failed requests.
+         *            null to not record
+         * @return failed requests, including status not 2xx
+         */
+        @SneakyThrows
+        private int run(Client c, HttpRequest req, int n, int concurrency, long[] lat, long deadline) {
+            var gate = new Semaphore(concurrency);
+            var done = new CountDownLatch(n);
+            var errors = new AtomicInteger();
+            var sent = new ArrayList<CompletableFuture<?>>(n);
+            try {
+                for (int i = 0; i < n; i++) {
+                    if (!gate.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                        throw new IllegalStateException("bench of " + url + " not finished in " + timeout);
+                    var at = i;
+                    var begin = new long[]{System.nanoTime()};
+                    try {
+                        sent.add(c.sendAsync(req, HttpResponse.BodyHandlers.discarding(), () -> begin[0] = System.nanoTime())
+                                .whenComplete((r, ex) -> {
+                                    var failed = ex != null || r.statusCode() / 100 != 2;
+                                    if (failed) errors.incrementAndGet();
+                                    if (lat != null) lat[at] = failed ? -1 : System.nanoTime() - begin[0];
+                                    gate.release();
+                                    done.countDown();
+                                }));
+                    } catch (RuntimeException ex) {
+                        errors.incrementAndGet();
+                        if (lat != null) lat[at] = -1;
+                        gate.release();
+                        done.countDown();
+                    }
+                }
+                if (!done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                    throw new IllegalStateException("bench of " + url + " not finished in " + timeout);
+            } catch (IllegalStateException ex) {
+                sent.forEach(f -> f.cancel(true));
+                throw ex;
+            }
+            return errors.get();
+        }
+
+        /**
+         * @return value at percentile of sorted samples in milliseconds, NaN if none
+         */
+        private static double percentile(long[] sorted, double p) {
+            return sorted.length == 0 ? Double.NaN : sorted[(int) Math.ceil(sorted.length * p) - 1] / 1e6;
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var c = client(ctx);
+            var req = request(method, url, headers, body, null);
+            var n = requests == null ? 1000 : requests;
+            var k = concurrency == null ? c.concurrency() : concurrency;
+            if (n <= 0 || k <= 0) throw new IllegalArgumentException("requests and concurrency must be positive");
+            var deadline = System.nanoTime() + (timeout == null ? Duration.ofMinutes(5) : timeout).toNanos();
+            var w = warmup == null ? k : warmup;
+            if (w > 0) run(c, req, w, k, null, deadline);
+            var lat = new long[n];
+            var begin = System.nanoTime();
+            var errors = run(c, req, n, k, lat, deadline);
+            var wall = System.nanoTime() - begin;
+            // failed requests are excluded from latency
+            var ok = Arrays.stream(lat).filter(x -> x >= 0).sorted().toArray();
+            var report = new LinkedHashMap<String, Object>();
+            report.put("requests", n);
+            report.put("errors", errors);
+            report.put("rps", n * 1e9 / wall);
+            report.put("p50", percentile(ok, 0.50));
+            report.put("p90", percentile(ok, 0.90));
+            report.put("p99", percentile(ok, 0.99));
+            report.put("max", percentile(ok, 1));
+            log.info("bench {} {} concurrency {}: {} requests, {} errors, {} rps, p50 {}ms, p90 {}ms, p99 {}ms, max {}ms",
+                    req.method(), url, k, n, errors,
+                    String.format("%.1f", (double) report.get("rps")),
+                    String.format("%.2f", (double) report.get("p50")),
+                    String.format("%.2f", (double) report.get("p90")),
+                    String.format("%.2f", (double) report.get("p99")),
+                    String.format("%.2f", (double) report.get("max")));
+            if (name != null && !name.isBlank()) {
+                ctx.invalidate(name);
+                ctx.put(name, report);
+            }
+        }
+    }
+}
@@ -1,18 +1,46 @@
 package cn.zenliu.automate.actions;
 
 import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.action.Program;
+import cn.zenliu.automate.browser.CaseContexts;
+import cn.zenliu.automate.browser.Connection;
+import cn.zenliu.automate.browser.ElementHandles;
+import cn.zenliu.automate.browser.Har;
+import cn.zenliu.automate.browser.Launcher;
+import cn.zenliu.automate.browser.PlaywrightPool;
+import cn.zenliu.automate.browser.ResponseCache;
+import cn.zenliu.automate.browser.Tracer;
+import com.microsoft.playwright.Tracing;
 import cn.zenliu.automate.context.Conf;
 import cn.zenliu.automate.context.Context;
+import cn.zenliu.automate.notation.ConfReader;
 import cn.zenliu.automate.notation.Info;
 import com.google.auto.service.AutoService;
+import cn.zenliu.automate.expr.JsonPath;
+import com.google.gson.JsonParser;
+import com.microsoft.playwright.APIRequestContext;
+import com.microsoft.playwright.APIResponse;
 import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.BrowserType;
 import com.microsoft.playwright.ElementHandle;
 import com.microsoft.playwright.Locator;
 import com.microsoft.playwright.Page;
+import com.microsoft.playwright.TimeoutError;
 import com.microsoft.playwright.options.*;
+import com.typesafe.config.ConfigRenderOptions;
+import com.typesafe.config.ConfigValueType;
+import lombok.SneakyThrows;
 import org.slf4j.Logger;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -25,41 +53,411 @@ public interface Playwrights {
     String CONTEXT = "context";
     String BROWSER = "Browser";
     String PLAYWRIGHT = "Playwright";
+    String PLAYWRIGHT_POOL = "PlaywrightPool";
+    String CASE_CONTEXTS = "CaseContexts";
+    String PAGE_POOL = "PagePool";
+    String HAR = "Har";
+    String RoutePolicyPrefix = "RoutePolicy::";
+    String RESPONSE_CACHE = "ResponseCache";
+    String NAV_DEFAULTS = "NavDefaults";
+    String ELEMENT_HANDLES = "ElementHandles";
+    String SCREENSHOTS = "Screenshots";
+    String TRACER = "Tracer";
+    String STORAGE_STATES = "StorageStates";
+    String LAUNCHER = "Launcher";
+    String CONNECTION = "Connection";
+    String REQUEST = "Request";
+    String ContextPrefix = "Context::";
     String PagePrefix = "Page::";
     String ElementPrefix = "Element::";
     String LocatorPrefix = "Locator::";
 
+    /**
+     * @return playwright of current thread, from pool when pooled.
+     */
+    static com.microsoft.playwright.Playwright playwright(Context ctx) {
+        var pool = ctx.var(PLAYWRIGHT_POOL, PlaywrightPool.class);
+        return pool.isPresent() ? pool.get().acquire() : ctx.require(PLAYWRIGHT, com.microsoft.playwright.Playwright.class);
+    }
+
+    /**
+     * @return browser of current thread, from the managed connection or pool if any.
+     */
+    static Browser browser(Context ctx) {
+        var conn = ctx.var(CONNECTION, Connection.class);
+        if (conn.isPresent()) return conn.get().browser(playwright(ctx));
+        var pool = ctx.var(PLAYWRIGHT_POOL, PlaywrightPool.class);
+        return pool.isPresent() && pool.get().connected() ? pool.get().browser() : ctx.require(BROWSER, Browser.class);
+    }
+
+    /**
+     * @param name page name without prefix
+     * @return the page, re-attached or re-created after a reconnect of {@link #CONNECTION}
+     */
+    static Page page(Context ctx, String name) {
+        var key = PagePrefix + name;
+        var conn = ctx.var(CONNECTION, Connection.class);
+        if (conn.isEmpty()) return ctx.require(key, Page.class);
+        var p = ctx.var(key, Page.class).orElse(null);
+        if (p == null) return ctx.require(key, Page.class);
+        return conn.get().revive(ctx, key, p, playwright(ctx));
+    }
+
+    /**
+     * drop a dead page of a lost connection from context, with the locators and element handles bound to it.
+     *
+     * @param name var name of page
+     */
+    static void drop(Context ctx, String name, Logger log) {
+        var dead = ctx.var(name, Page.class).orElse(null);
+        if (dead != null) {
+            ctx.var(ELEMENT_HANDLES, ElementHandles.class).ifPresent(e -> e.release(ctx, dead));
+            var stale = new ArrayList<String>();
+            for (var e : ctx.vars().entrySet()) {
+                if (e.getKey().startsWith(LocatorPrefix) && e.getValue() instanceof Locator l && l.page() == dead) stale.add(e.getKey());
+            }
+            stale.forEach(ctx::invalidate);
+            if (!stale.isEmpty()) log.warn("drop locators {} of dead page {}, locate them again", stale, name);
+        }
+        try {
+            ctx.invalidate(name);
+        } catch (Exception ex) {
+            log.debug("close dead page {}", name, ex);
+        }
+    }
+
+    /**
+     * @return new page in the first context of browser, in place of a dead page
+     */
+    static Page fresh(Browser b) {
+        return (b.contexts().isEmpty() ? b.newContext() : b.contexts().get(0)).newPage();
+    }
+
+    /**
+     * resolve browser context for new pages: the named one, else the isolated one of current case and thread,
+     * else the default named '{@value #CONTEXT}'.
+     *
+     * @return null if none
+     */
+    static BrowserContext context(Context ctx, String name) {
+        if (name != null && !name.isBlank()) return ctx.require(ContextPrefix + name, BrowserContext.class);
+        var cc = ctx.var(CASE_CONTEXTS, CaseContexts.class);
+        if (cc.isPresent()) return cc.get().current(Playwrights::browser, ctx);
+        return ctx.var(ContextPrefix + CONTEXT, BrowserContext.class).orElse(null);
+    }
+
+    /**
+     * @param waitUntil one of commit, domcontentloaded, load or networkidle; null or blank to use the default
+     * @param timeout   timeout in milliseconds, null to use the default
+     * @return navigate options merged with {@link NavDefaults}
+     */
+    static Page.NavigateOptions navigate(Context ctx, String waitUntil, Double timeout) {
+        var d = ctx.var(NAV_DEFAULTS, NavDefaults.class);
+        var opt = new Page.NavigateOptions();
+        var w = waitUntil != null && !waitUntil.isBlank() ? waitUntil : d.map(NavDefaults::waitUntil).orElse(null);
+        if (w != null && !w.isBlank()) opt.setWaitUntil(NavDefaults.state(w));
+        var t = timeout != null ? timeout : d.map(NavDefaults::timeout).map(x -> (double) x.toMillis()).orElse(null);
+        if (t != null) opt.setTimeout(t);
+        return opt;
+    }
+
+    @AutoService(Action.class)
+    @Info("default navigation options of pageOpen and pageNav. Unique named as " + NAV_DEFAULTS + ".")
+    record NavDefaults(
+            @Info(value = "when navigation is done: commit, domcontentloaded, load or networkidle. default load", optional = true)
+            String waitUntil,
+            @Info(value = "navigation timeout", optional = true)
+            Duration timeout,
+            @Info(value = "prefetch targets of upcoming pageNav actions with <link rel=prefetch> on the page, default false", optional = true)
+            Boolean prefetch
+    ) implements Action {
+        public NavDefaults() {
+            this(null, null, null);
+        }
+
+        static WaitUntilState state(String v) {
+            return switch (v.trim().toLowerCase()) {
+                case "commit" -> WaitUntilState.COMMIT;
+                case "domcontentloaded" -> WaitUntilState.DOMCONTENTLOADED;
+                case "load" -> WaitUntilState.LOAD;
+                case "networkidle" -> WaitUntilState.NETWORKIDLE;
+                default -> throw new IllegalArgumentException("invalid waitUntil '" + v + "', expect one of commit, domcontentloaded, load or networkidle");
+            };
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            if (waitUntil != null && !waitUntil.isBlank()) state(waitUntil);
+            ctx.invalidate(NAV_DEFAULTS);
+            ctx.put(NAV_DEFAULTS, this);
+        }
+    }
+
+    /**
+     * @return tracker of element handles, created on first use. Unique named as {@value #ELEMENT_HANDLES}.
+     */
+    static ElementHandles elements(Context ctx) {
+        var v = ctx.var(ELEMENT_HANDLES, ElementHandles.class);
+        if (v.isPresent()) return v.get();
+        ctx.put(ELEMENT_HANDLES, new ElementHandles(ctx.log()));
+        return ctx.require(ELEMENT_HANDLES, ElementHandles.class);
+    }
+
+    /**
+     * @return store of storage states, created on first use with folder 'states' and time to live of one hour.
+     * Unique named as {@value #STORAGE_STATES}.
+     */
+    static cn.zenliu.automate.browser.StorageStates states(Context ctx) {
+        var v = ctx.var(STORAGE_STATES, cn.zenliu.automate.browser.StorageStates.class);
+        if (v.isPresent()) return v.get();
+        ctx.put(STORAGE_STATES, new cn.zenliu.automate.browser.StorageStates(ctx.log(), Path.of("states"), Duration.ofHours(1)));
+        return ctx.require(STORAGE_STATES, cn.zenliu.automate.browser.StorageStates.class);
+    }
+
+    /**
+     * apply HAR record or replay on page if configured.
+     *
+     * @param mode  mode override, null or blank to use the configured
+     * @param fresh page has no routes yet
+     */
+    static void har(Context ctx, String name, Page p, String mode, boolean fresh) {
+        var m = mode == null || mode.isBlank() ? null : Har.Mode.of(mode);
+        var h = ctx.var(HAR, Har.class);
+        if (h.isEmpty()) {
+            if (m != null && m != Har.Mode.OFF) throw new IllegalStateException("HAR mode of page " + name + " requires " + HAR + " configured by harConfig");
+            return;
+        }
+        h.get().apply(ctx, name, p, m, fresh);
+    }
+
+    @AutoService(Action.class)
+    @Info("configure HAR record or replay for pages, each page of each case uses its own archive in folder. Unique named as " + HAR + ".")
+    record HarConfig(
+            @Info(value = "default mode of pages: off, record or replay")
+            String mode,
+            @Info(value = "folder of HAR archives, default 'har'", optional = true)
+            String dir,
+            @Info(value = "glob of urls to record or replay, default all", optional = true)
+            String url,
+            @Info(value = "send requests missed in HAR to network on replay, else abort them. default true", optional = true)
+            Boolean fallthrough
+    ) implements Action {
+        public HarConfig() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(HAR);
+            if (mode == null || mode.isBlank()) throw new IllegalArgumentException("HAR mode required");
+            var h = new Har(log, Har.Mode.of(mode), java.nio.file.Path.of(dir == null || dir.isBlank() ? "har" : dir),
+                    url == null || url.isBlank() ? null : url, fallthrough == null || fallthrough);
+            if (log.isTraceEnabled()) log.trace("configure {}", h);
+            ctx.put(HAR, h);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("register a request routing policy, applied to every page opened later. rules are objects of 'url' glob and/or 'type' resource types, " +
+            "'action' one of block, stub or file, 'file' path for file, optional 'status' and 'contentType'. first matched rule wins.")
+    record RoutePolicy(
+            @Info(value = "policy name, automatic prefix with '" + RoutePolicyPrefix + "'")
+            String name,
+            @Info(value = "rules of policy")
+            List<cn.zenliu.automate.browser.RoutePolicy.Rule> rules
+    ) implements Action {
+        public RoutePolicy() {
+            this(null, null);
+        }
+
+        @Override
+        public RoutePolicy make(Conf c) {
+            var name = c.rString("name");
+            var rules = c.objects("rules").orElseThrow(() -> new IllegalArgumentException("rules required but missing"));
+            return new RoutePolicy(name, rules.stream().map(r -> new cn.zenliu.automate.browser.RoutePolicy.Rule(
+                    r.string("url").orElse(null),
+                    r.maybe("type", (x, k) -> x.getValue(k).valueType() == ConfigValueType.LIST
+                            ? Set.copyOf(x.getStringList(k))
+                            : Set.of(x.getString(k))).orElse(Set.of()),
+                    cn.zenliu.automate.browser.RoutePolicy.Kind.of(r.rString("action")),
+                    r.string("file").map(Path::of).orElse(null),
+                    r.integer("status").orElse(200),
+                    r.string("contentType").orElse(null)
+            )).toList());
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var name = RoutePolicyPrefix + this.name;
+            ctx.mustNotExists(name);
+            if (log.isTraceEnabled()) log.trace("register route policy {} with {} rules", name, rules.size());
+            ctx.put(name, new cn.zenliu.automate.browser.RoutePolicy(log, name, rules));
+        }
+    }
+
     @AutoService(Action.class)
-    @Info("connect to a chrome browser. playwright required. Unique named as " + BROWSER + ".")
+    @Info("enable local HTTP response cache for every page opened later, shared by all pages and kept on disk across runs. Unique named as " + RESPONSE_CACHE + ".")
+    record HttpCache(
+            @Info(value = "cache folder, default '.cache/http'", optional = true)
+            String dir,
+            @Info(value = "glob of cached urls, default all", optional = true)
+            String url,
+            @Info(value = "max megabytes of bodies kept in memory, default 64", optional = true)
+            Integer memory
+    ) implements Action {
+        public HttpCache() {
+            this(null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(RESPONSE_CACHE);
+            var c = new ResponseCache(log, Path.of(dir == null || dir.isBlank() ? ".cache/http" : dir),
+                    url == null || url.isBlank() ? null : url,
+                    (memory == null ? 64 : memory) * 1024L * 1024L);
+            if (log.isTraceEnabled()) log.trace("enable {}", c);
+            ctx.put(RESPONSE_CACHE, c);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("connect to a chrome browser, reconnect when lost. playwright required, can not be used with launch. Unique named as " + CONNECTION + " instead of " + BROWSER + ", connected browsers are shared by threads using the same playwright instance.")
     record Chrome(
             @Info(value = "CDP url", optional = true)
             String cdp,
             @Info(value = "ws endpoint", optional = true)
-            String ws
+            String ws,
+            @Info(value = "max attempts of each connect or reconnect, default 5", optional = true)
+            Integer attempts,
+            @Info(value = "wait before retry, doubled for each further attempt. default 1s", optional = true)
+            Duration backoff,
+            @Info(value = "max wait between attempts, default 30s", optional = true)
+            Duration maxBackoff
     ) implements Action {
         public Chrome() {
-            this(null, null);
+            this(null, null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx, Logger log) {
             ctx.mustExists(PLAYWRIGHT);
-            ctx.mustNotExists(BROWSER);
+            ctx.mustNotExists(CONNECTION);
+            if (ctx.vars().containsKey(LAUNCHER))
+                throw new IllegalStateException("browser already launched, chrome and launch can not be used together");
             if (log.isTraceEnabled()) log.trace("initialize chrome browser");
-            var p = ctx.require(PLAYWRIGHT, com.microsoft.playwright.Playwright.class);
-            var c = cdp != null && !cdp.isBlank() ?
-                    p.chromium().connectOverCDP(cdp)
-                    : ws != null && !ws.isBlank() ? p.chromium().connect(ws)
-                    : null;
-            if (c == null) throw new IllegalArgumentException("at least one of CDP or ws required");
-            ctx.put(BROWSER, c);
+            if ((cdp == null || cdp.isBlank()) && (ws == null || ws.isBlank()))
+                throw new IllegalArgumentException("at least one of CDP or ws required");
+            var conn = new Connection(log, cdp != null && !cdp.isBlank() ? cdp : ws, this::connect,
+                    attempts == null ? 5 : attempts,
+                    backoff == null ? Duration.ofSeconds(1) : backoff,
+                    maxBackoff == null ? Duration.ofSeconds(30) : maxBackoff);
+            ctx.put(CONNECTION, conn);
+            conn.browser(playwright(ctx));
+        }
+
+        private Browser connect(com.microsoft.playwright.Playwright p) {
+            return cdp != null && !cdp.isBlank() ? p.chromium().connectOverCDP(cdp) : p.chromium().connect(ws);
+
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("launch a browser. playwright required, can not be used with chrome. Unique named as " + BROWSER + ", or as context '" + CONTEXT + "' when using a persistent profile. timings named as " + LAUNCHER + ".")
+    record Launch(
+            @Info(value = "browser type, default chromium", optional = true, values = {"chromium", "firefox", "webkit"})
+            String type,
+            @Info(value = "headless mode, default true", optional = true)
+            Boolean headless,
+            @Info(value = "persistent user data folder, keeps disk cache, service workers and storage across runs. launched as a browser context named '" + CONTEXT + "'", optional = true)
+            String profile,
+            @Info(value = "browser distribution channel, such as chrome or msedge", optional = true)
+            String channel,
+            @Info(value = "browser executable to use instead of the bundled one", optional = true)
+            String executable,
+            @Info(value = "extra command line arguments", optional = true, read = Conf.class, from = "MaybeListString")
+            List<String> args,
+            @Info(value = "slow down operations by milliseconds", optional = true)
+            Double slowMo,
+            @Info(value = "max wait for the browser to start, default 30s", optional = true)
+            Duration timeout
+    ) implements Action {
+        public Launch() {
+            this(null, null, null, null, null, null, null, null);
+        }
+
+        BrowserType type(com.microsoft.playwright.Playwright p) {
+            return switch (type == null || type.isBlank() ? "chromium" : type) {
+                case "chromium" -> p.chromium();
+                case "firefox" -> p.firefox();
+                case "webkit" -> p.webkit();
+                default -> throw new IllegalArgumentException("invalid browser type '" + type + "', expect chromium, firefox or webkit");
+            };
+        }
 
+        BrowserType.LaunchOptions options() {
+            var opt = new BrowserType.LaunchOptions().setHeadless(headless == null || headless);
+            if (channel != null && !channel.isBlank()) opt.setChannel(channel);
+            if (executable != null && !executable.isBlank()) opt.setExecutablePath(Path.of(executable));
+            if (args != null && !args.isEmpty()) opt.setArgs(args);
+            if (slowMo != null) opt.setSlowMo(slowMo);
+            if (timeout != null) opt.setTimeout(timeout.toMillis());
+            return opt;
+        }
+
+        BrowserType.LaunchPersistentContextOptions persistent() {
+            var opt = new BrowserType.LaunchPersistentContextOptions().setHeadless(headless == null || headless);
+            if (channel != null && !channel.isBlank()) opt.setChannel(channel);
+            if (executable != null && !executable.isBlank()) opt.setExecutablePath(Path.of(executable));
+            if (args != null && !args.isEmpty()) opt.setArgs(args);
+            if (slowMo != null) opt.setSlowMo(slowMo);
+            if (timeout != null) opt.setTimeout(timeout.toMillis());
+            return opt;
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustExists(PLAYWRIGHT);
+            ctx.mustNotExists(BROWSER);
+            ctx.mustNotExists(LAUNCHER);
+            if (ctx.vars().containsKey(CONNECTION))
+                throw new IllegalStateException("chrome browser already connected, chrome and launch can not be used together");
+            var pool = ctx.var(PLAYWRIGHT_POOL, PlaywrightPool.class);
+            var dir = profile == null || profile.isBlank() ? null : Path.of(profile);
+            var launcher = new Launcher(log, type == null || type.isBlank() ? "chromium" : type, dir);
+            ctx.put(LAUNCHER, launcher);
+            var begin = System.nanoTime();
+            if (dir != null) {
+                // a user data folder is locked by the browser using it
+                if (pool.isPresent()) throw new IllegalStateException("persistent profile can not be shared by pooled playwright instances");
+                var name = ContextPrefix + CONTEXT;
+                ctx.mustNotExists(name);
+                if (log.isTraceEnabled()) log.trace("launch {} with profile {}", launcher, dir);
+                ctx.put(name, type(ctx.require(PLAYWRIGHT, com.microsoft.playwright.Playwright.class)).launchPersistentContext(dir, persistent()));
+                launcher.launched(begin);
+                return;
+            }
+            if (log.isTraceEnabled()) log.trace("launch {}", launcher);
+            if (pool.isPresent()) {
+                pool.get().connector(p -> type(p).launch(options()));
+                ctx.put(BROWSER, pool.get().browser());
+            } else {
+                ctx.put(BROWSER, type(ctx.require(PLAYWRIGHT, com.microsoft.playwright.Playwright.class)).launch(options()));
+            }
+            launcher.launched(begin);
         }
     }
 
-/*  @AutoService(Action.class)
-    @Info("create new browser context. playwright required. Unique named as " + CONTEXT + ".")
+    @AutoService(Action.class)
+    @Info("create new browser context, pages opened in it share cookies and storage only with each other. any of browser required.")
     record ContextCreate(
+            @Info(value = "context name, automatic prefix with '" + ContextPrefix + "', default '" + CONTEXT + "' which is used by pages open without context.", optional = true)
+            String name,
+            @Info(value = "create an isolated context for each case and each forked thread, closed when the case ends. Named as " + CASE_CONTEXTS + ".", optional = true)
+            Boolean perCase,
+            @Info(value = "simulation user agent", optional = true)
+            String ua,
+            @Info(value = "dark mode", optional = true)
+            Boolean dark,
             @Info(value = "simulation touch", optional = true)
             Boolean touch,
             @Info(value = "simulation mobile", optional = true)
@@ -74,53 +472,209 @@ public interface Playwrights {
             Integer width,
             @Info(value = "window height", optional = true)
             Integer height,
-            @Info(value = "timeout", optional = true)
-            Double timeout
+            @Info(value = "default timeout for operation on pages", optional = true)
+            Duration timeout,
+            @Info(value = "key of storage state to start with, loaded by loadState or saveState before the context is created", optional = true)
+            String state
     ) implements Action {
         public ContextCreate() {
-            this(null, null, null, null,null, null, null, null);
+            this(null, null, null, null, null, null, null, null, null, null, null, null, null);
         }
 
-        @Override
-        public void execute(Context ctx ,Logger log) {
-            ctx.mustExists(PLAYWRIGHT);
-            ctx.mustExists(BROWSER);
-            ctx.mustNotExists(CONTEXT);
-            if (log.isTraceEnabled()) log.trace("initialize browser context");
-            var p = ctx.require(BROWSER, Browser.class);
+        Browser.NewContextOptions options() {
             var opt = new Browser.NewContextOptions();
+            if (dark != null) opt.setColorScheme(dark ? ColorScheme.DARK : ColorScheme.LIGHT);
             if (touch != null) opt.setHasTouch(touch);
             if (mobile != null) opt.setIsMobile(mobile);
             if (scale != null) opt.setDeviceScaleFactor(scale);
+            if (ua != null && !ua.isBlank()) opt.setUserAgent(ua);
             if (vwWidth != null && vwHeight != null) opt.setViewportSize(vwWidth, vwHeight);
-            else if (vwWidth != null || vwHeight != null)
-                throw new IllegalStateException("both vwHeight and vwWidth should not null");
+            else if (vwWidth != null || vwHeight != null) {
+                throw new IllegalStateException("viewport width and height must both not null");
+            }
             if (width != null && height != null) opt.setScreenSize(width, height);
             else if (width != null || height != null) {
-                throw new IllegalStateException("viewport width and height must both not null");
+                throw new IllegalStateException("window width and height must both not null");
+            }
+            return opt;
+        }
+
+        Browser.NewContextOptions options(Context ctx) {
+            var opt = options();
+            if (state == null || state.isBlank()) return opt;
+            var f = states(ctx).current(state);
+            if (f == null) throw new IllegalStateException("storage state " + state + " not loaded, load it by loadState");
+            return opt.setStorageStatePath(f);
+        }
+
+        BrowserContext create(Context ctx) {
+            var cx = browser(ctx).newContext(options(ctx));
+            if (timeout != null) cx.setDefaultTimeout(timeout.toMillis());
+            return cx;
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            if (perCase != null && perCase) {
+                ctx.mustNotExists(CASE_CONTEXTS);
+                if (log.isTraceEnabled()) log.trace("enable isolated browser context per case");
+                options();
+                ctx.put(CASE_CONTEXTS, new CaseContexts(log, () -> options(ctx), timeout));
+                return;
             }
-            if(timeout!=null) opt.timeout
-            var cx = p.newContext(opt);
-            ctx.put(CONTEXT, cx);
+            var name = ContextPrefix + (this.name == null || this.name.isBlank() ? CONTEXT : this.name);
+            ctx.mustNotExists(name);
+            if (log.isTraceEnabled()) log.trace("create browser context {}", name);
+            ctx.put(name, create(ctx));
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("configure store of storage states. Unique named as " + STORAGE_STATES + ".")
+    record StorageStates(
+            @Info(value = "folder of states, default 'states'", optional = true)
+            String dir,
+            @Info(value = "max age of a saved state, default 1h", optional = true)
+            Duration ttl
+    ) implements Action {
+        public StorageStates() {
+            this(null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(STORAGE_STATES);
+            ctx.put(STORAGE_STATES, new cn.zenliu.automate.browser.StorageStates(log,
+                    Path.of(dir == null || dir.isBlank() ? "states" : dir),
+                    ttl == null ? Duration.ofHours(1) : ttl));
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("save cookies and local storage of a browser context as a storage state.")
+    record SaveState(
+            @Info(value = "key of state")
+            String key,
+            @Info(value = "browser context name, automatic prefix with '" + ContextPrefix + "'. default the context of current case or the one named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "fingerprint of the state, loadState with a different fingerprint treats it as stale", optional = true)
+            String fingerprint
+    ) implements Action {
+        public SaveState() {
+            this(null, null, null);
+        }
 
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var cx = Playwrights.context(ctx, context);
+            if (cx == null) throw new IllegalStateException("no browser context to save state " + key);
+            states(ctx).save(cx, key, cn.zenliu.automate.browser.StorageStates.fingerprint(fingerprint));
         }
-    }*/
+    }
+
+    @AutoService(Action.class)
+    @Info("load a saved storage state for contextCreate, login and save it again when missing, expired or its fingerprint changed.")
+    record LoadState(
+            @Info(value = "key of state")
+            String key,
+            @Info(value = "browser context to save after login, automatic prefix with '" + ContextPrefix + "'. default the context of current case or the one named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "fingerprint of the state, default computed from the login actions", optional = true)
+            String fingerprint,
+            @Info(value = "login actions to execute when the state is not fresh, fails without them", optional = true)
+            List<Action> login
+    ) implements Action {
+        public LoadState() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public LoadState make(Conf c) {
+            var key = c.string("key").orElseThrow(() -> new IllegalArgumentException("key required but missing"));
+            var login = c.objects("login").orElse(List.of());
+            var fp = c.string("fingerprint")
+                    .orElseGet(() -> login.isEmpty() ? null : c.getList("login").render(ConfigRenderOptions.concise()));
+            return new LoadState(key, c.string("context").orElse(null), fp, login.stream().map(Action::parseConf).toList());
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var store = states(ctx);
+            var fp = cn.zenliu.automate.browser.StorageStates.fingerprint(fingerprint);
+            // cases of forked threads wait for one login instead of each doing its own
+            synchronized (store) {
+                var f = store.fresh(key, fp);
+                if (f != null) {
+                    if (log.isDebugEnabled()) log.debug("storage state {} restored from {}", key, f);
+                    return;
+                }
+                if (login == null || login.isEmpty())
+                    throw new IllegalStateException("storage state " + key + " not fresh and no login actions");
+                var begin = System.nanoTime();
+                Program.compile(action() + "." + key, login).run(ctx, log, false);
+                var cx = Playwrights.context(ctx, context);
+                if (cx == null) throw new IllegalStateException("no browser context to save state " + key + " after login");
+                store.save(cx, key, fp);
+                log.info("storage state {} saved after login in {}ms", key, (System.nanoTime() - begin) / 1_000_000);
+            }
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("close a browser context and pages in it.")
+    record ContextClose(
+            @Info(value = "context name, automatic prefix with '" + ContextPrefix + "', default '" + CONTEXT + "'", optional = true)
+            String name
+    ) implements Action {
+        public ContextClose() {
+            this(null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var name = ContextPrefix + (this.name == null || this.name.isBlank() ? CONTEXT : this.name);
+            var cx = ctx.require(name, BrowserContext.class);
+            if (log.isTraceEnabled()) log.trace("close browser context {}", name);
+            for (var e : ctx.vars().entrySet()) {
+                if (e.getValue() instanceof Page p && p.context() == cx) ctx.invalidate(e.getKey());
+            }
+            ctx.invalidate(name);
+        }
+    }
 
     @AutoService(Action.class)
     @Info("initialize playwright. Unique named as " + PLAYWRIGHT + ".")
     record Playwright(
             @Info(value = "context property", optional = true, read = Conf.class, from = "MaybeStringMap")
-            Map<String, String> property
+            Map<String, String> property,
+            @Info(value = "max playwright instances for parallel threads, each thread uses its own instance. Pool named as " + PLAYWRIGHT_POOL + ".", optional = true)
+            Integer pool,
+            @Info(value = "idle instance health check interval, default 1m.", optional = true)
+            Duration check,
+            @Info(value = "max wait for a free pooled instance, default 5m.", optional = true)
+            Duration acquire
     ) implements Action {
 
 
         public Playwright() {
-            this(null);
+            this(null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx, Logger log) {
             ctx.mustNotExists(PLAYWRIGHT);
+            if (pool != null) {
+                if (log.isTraceEnabled()) log.trace("initialize playwright pool of {}", pool);
+                ctx.mustNotExists(PLAYWRIGHT_POOL);
+                var pw = new PlaywrightPool(log, property, pool,
+                        check == null ? Duration.ofMinutes(1) : check,
+                        acquire == null ? Duration.ofMinutes(5) : acquire);
+                ctx.put(PLAYWRIGHT_POOL, pw);
+                // owned and closed by the pool
+                ctx.put(PLAYWRIGHT, pw.acquire(), () -> {
+                });
+                return;
+            }
             if (log.isTraceEnabled()) log.trace("initialize playwright");
             com.microsoft.playwright.Playwright p;
             if (property != null && !property.isEmpty()) {
@@ -137,6 +691,8 @@ public interface Playwrights {
     record PageOpen(
             @Info(value = "unique page name for other actions to use, automatic prefix with '" + PagePrefix + "'")
             String name,
+            @Info(value = "browser context name to open page in, automatic prefix with '" + ContextPrefix + "'. default the isolated context of case or context named '" + CONTEXT + "' if exists.", optional = true)
+            String context,
             @Info(value = "page url", optional = true)
             String url,
             @Info(value = "simulation user agent", optional = true)
@@ -158,20 +714,80 @@ public interface Playwrights {
             @Info(value = "window height", optional = true)
             Integer height,
             @Info(value = "default timeout for operation on page", optional = true)
-            Duration timeout
+            Duration timeout,
+            @Info(value = "HAR mode of page: off, record or replay. default the mode of " + HAR + " if configured.", optional = true)
+            String har,
+            @Info(value = "when navigation to url is done: commit, domcontentloaded, load or networkidle. default from " + NAV_DEFAULTS + " or load", optional = true)
+            String waitUntil
     ) implements Action {
 
         public PageOpen() {
-            this(null, null, null, null, null, null, null, null, null, null, null, null);
+            this(null, null, null, null, null, null, null, null, null, null, null, null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx, Logger log) {
             var name = PagePrefix + this.name;
-            ctx.mustExists(BROWSER);
             ctx.mustNotExists(name);
             if (log.isTraceEnabled()) log.trace("open page {} ", name);
-            var p = ctx.require(BROWSER, Browser.class);
+            var cx = Playwrights.context(ctx, context);
+            var pool = ctx.var(PAGE_POOL, cn.zenliu.automate.browser.PagePool.class);
+            Page c;
+            if (pool.isPresent()) {
+                c = reuse(pool.get().acquire(cx, cx != null ? null : browser(ctx)), log);
+            } else {
+                c = cx != null ? reuse(cx.newPage(), log) : browser(ctx).newPage(options());
+            }
+            setup(ctx, name, c);
+            if (this.url != null && !this.url.isBlank()) {
+                var begin = System.nanoTime();
+                c.navigate(url, navigate(ctx, waitUntil, null));
+                ctx.var(LAUNCHER, Launcher.class).ifPresent(l -> l.navigated(begin));
+            }
+            ctx.var(CONNECTION, Connection.class).ifPresent(x -> x.track(name, c, (b, found, last) -> {
+                drop(ctx, name, log);
+                if (found == null && context != null)
+                    log.warn("browser context {} of page {} is not rebuilt after reconnect, re-create the page in the browser", context, name);
+                var r = found != null ? found : pool.isPresent() ? pool.get().acquire(null, b) : fresh(b);
+                setup(ctx, name, r);
+                if (found == null && last.startsWith("http")) r.navigate(last, navigate(ctx, waitUntil, null));
+                return r;
+            }));
+        }
+
+        /**
+         * install HAR, response cache and route policies on page, store it with the closer of page pool if configured.
+         */
+        private void setup(Context ctx, String name, Page c) {
+            Playwrights.har(ctx, this.name, c, har, true);
+            ctx.var(RESPONSE_CACHE, ResponseCache.class).ifPresent(r -> r.apply(c));
+            ctx.var(Context.Recorder.NAME, cn.zenliu.automate.browser.FlightRecorder.class).ifPresent(r -> r.watch(ctx, name, c));
+            for (var v : ctx.vars().values()) {
+                if (v instanceof cn.zenliu.automate.browser.RoutePolicy r) r.apply(c);
+            }
+            if (timeout != null) c.setDefaultTimeout(timeout.toMillis());
+            var pool = ctx.var(PAGE_POOL, cn.zenliu.automate.browser.PagePool.class);
+            if (pool.isPresent()) {
+                var pp = pool.get();
+                ctx.put(name, c, () -> pp.release(c));
+            } else ctx.put(name, c);
+        }
+
+        /**
+         * apply page level options on a page of an existing context.
+         */
+        private Page reuse(Page c, Logger log) {
+            if (ua != null || touch != null || mobile != null || scale != null || width != null || height != null)
+                log.warn("page {} opened in a browser context or pool, ignore context level options: ua, touch, mobile, scale, width, height", name);
+            if (dark != null) c.emulateMedia(new Page.EmulateMediaOptions().setColorScheme(dark ? ColorScheme.DARK : ColorScheme.LIGHT));
+            if (vwWidth != null && vwHeight != null) c.setViewportSize(vwWidth, vwHeight);
+            else if (vwWidth != null || vwHeight != null) {
+                throw new IllegalStateException("viewport width and height must both not null");
+            }
+            return c;
+        }
+
+        private Browser.NewPageOptions options() {
             var opt = new Browser.NewPageOptions();
             if (dark != null) opt.setColorScheme(dark ? ColorScheme.DARK : ColorScheme.LIGHT);
             if (mobile != null) opt.setIsMobile(mobile);
@@ -186,10 +802,7 @@ public interface Playwrights {
             else if (width != null || height != null) {
                 throw new IllegalStateException("viewport width and height must both not null");
             }
-            var c = p.newPage(opt);
-            if (this.url != null && !this.url.isBlank()) c.navigate(url);
-            if (timeout != null) c.setDefaultTimeout(timeout.toMillis());
-            ctx.put(name, c);
+            return opt;
         }
     }
 
@@ -206,13 +819,43 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             ctx.mustExists(PagePrefix + page, Page.class);
             if (log.isTraceEnabled()) log.trace("close page {} ", page);
+            ctx.var(CONNECTION, Connection.class).ifPresent(x -> x.untrack(PagePrefix + page));
             ctx.invalidate(PagePrefix + page);
         }
     }
 
+    @AutoService(Action.class)
+    @Info("enable warm page pool, pages opened later are taken from pool and reset for reuse when closed. any of browser required. Unique named as " + PAGE_POOL + ".")
+    record PagePool(
+            @Info(value = "idle pages kept for each browser context, pre-opened for the context. default 2", optional = true)
+            Integer size,
+            @Info(value = "browser context name to pre-open pages in, automatic prefix with '" + ContextPrefix + "'. default the context named '" + CONTEXT + "' if exists.", optional = true)
+            String context,
+            @Info(value = "close page after this uses, default unlimited", optional = true)
+            Integer maxUses,
+            @Info(value = "close page when used JS heap exceeds this megabytes on release, chromium only. default unlimited", optional = true)
+            Integer maxHeap
+    ) implements Action {
+        public PagePool() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(PAGE_POOL);
+            var pool = new cn.zenliu.automate.browser.PagePool(log, size == null ? 2 : size,
+                    maxUses == null ? 0 : maxUses,
+                    maxHeap == null ? 0L : maxHeap * 1024L * 1024L);
+            var cx = context != null && !context.isBlank()
+                    ? ctx.require(ContextPrefix + context, BrowserContext.class)
+                    : ctx.var(ContextPrefix + CONTEXT, BrowserContext.class).orElse(null);
+            pool.warm(cx, cx != null ? null : browser(ctx));
+            ctx.put(PAGE_POOL, pool);
+        }
+    }
+
     @AutoService(Action.class)
     @Info("navigate page to url. An exists page is required.")
     record PageNav(
@@ -223,21 +866,221 @@ public interface Playwrights {
             @Info(value = "store response as provide name for later use", optional = true)
             String response,
             @Info(value = "timeout in milliseconds", optional = true)
-            Double timeout
-    ) implements Action {
+            Double timeout,
+            @Info(value = "HAR mode of page if not applied yet: off, record or replay. default the mode of " + HAR + " if configured.", optional = true)
+            String har,
+            @Info(value = "when navigation is done: commit, domcontentloaded, load or networkidle. default from " + NAV_DEFAULTS + " or load", optional = true)
+            String waitUntil,
+            @Info(value = "prefetch url on the page while previous actions run, default from " + NAV_DEFAULTS + " or false", optional = true)
+            Boolean prefetch
+    ) implements Program.Lookahead {
 
         public PageNav() {
-            this(null, null, null, null);
+            this(null, null, null, null, null, null, null);
         }
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
+            Playwrights.har(ctx, page, p, har, false);
             if (log.isTraceEnabled()) log.trace("navigate page {} to {} ", page, url);
-            var res = timeout != null ? p.navigate(url, new Page.NavigateOptions().setTimeout(timeout)) : p.navigate(url);
+            var begin = System.nanoTime();
+            var res = p.navigate(url, navigate(ctx, waitUntil, timeout));
+            ctx.var(LAUNCHER, Launcher.class).ifPresent(l -> l.navigated(begin));
             if (response != null && !response.isBlank()) ctx.put(response, res);
         }
+
+        @Override
+        public void prefetch(Context ctx, Logger log) {
+            if (!(prefetch != null ? prefetch : ctx.var(NAV_DEFAULTS, NavDefaults.class).map(NavDefaults::prefetch).orElse(false)))
+                return;
+            var p = ctx.var(PagePrefix + page, Page.class).orElse(null);
+            if (p == null || p.isClosed() || !p.url().startsWith("http")) return;
+            if (log.isTraceEnabled()) log.trace("prefetch {} on page {}", url, page);
+            p.evaluate("u => { const l = document.createElement('link'); l.rel = 'prefetch'; l.href = u; document.head.appendChild(l); }", url);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("configure background screenshot pipeline of screenshot action. Unique named as " + SCREENSHOTS + ".")
+    record Screenshots(
+            @Info(value = "max pending screenshots, default 16", optional = true)
+            Integer capacity,
+            @Info(value = "when queue is full: block the case until space, or drop the screenshot. default block", optional = true, values = {
+                    "block: wait for space",
+                    "drop: discard the screenshot",
+            })
+            String policy
+    ) implements Action {
+        public Screenshots() {
+            this(null, null);
+        }
+
+        static cn.zenliu.automate.browser.Screenshots create(Context ctx, Logger log, Integer capacity, String policy) {
+            if (policy != null && !policy.equals("block") && !policy.equals("drop"))
+                throw new IllegalArgumentException("invalid screenshot policy '" + policy + "', expect block or drop");
+            return new cn.zenliu.automate.browser.Screenshots(log, capacity == null ? 16 : capacity, !"drop".equals(policy), ctx.executor());
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(SCREENSHOTS);
+            ctx.put(SCREENSHOTS, create(ctx, log, capacity, policy));
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("capture screenshot of page and write it in background, a frame identical to the previous of the page is skipped.")
+    record Screenshot(
+            @Info(value = "page name to use, automatic prefix with '" + PagePrefix + "'")
+            String page,
+            @Info(value = "file to write, placeholders: {case} current case, {page} page name, {n} sequence number, {time} epoch milliseconds")
+            String file,
+            @Info(value = "capture full scrollable page, default false", optional = true)
+            Boolean fullPage,
+            @Info(value = "selector of element to capture instead of page", optional = true)
+            String selector,
+            @Info(value = "capture type of browser: png or jpeg, default png", optional = true)
+            String type,
+            @Info(value = "jpeg quality 0-100", optional = true)
+            Integer quality,
+            @Info(value = "re-encode format in background such as png or jpg, default write captured bytes", optional = true)
+            String format,
+            @Info(value = "scale of image when re-encode, such as 0.5", optional = true)
+            Double scale
+    ) implements Action {
+        public Screenshot() {
+            this(null, null, null, null, null, null, null, null);
+        }
+
+        @SneakyThrows
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var p = Playwrights.page(ctx, page);
+            var pipe = ctx.var(SCREENSHOTS, cn.zenliu.automate.browser.Screenshots.class).orElse(null);
+            if (pipe == null) {
+                ctx.put(SCREENSHOTS, Screenshots.create(ctx, log, null, null));
+                pipe = ctx.require(SCREENSHOTS, cn.zenliu.automate.browser.Screenshots.class);
+            }
+            var t = type == null || type.isBlank() ? ScreenshotType.PNG : ScreenshotType.valueOf(type.toUpperCase());
+            var begin = System.nanoTime();
+            byte[] data;
+            if (selector != null && !selector.isBlank()) {
+                var opt = new Locator.ScreenshotOptions().setType(t);
+                if (quality != null) opt.setQuality(quality);
+                data = p.locator(selector).screenshot(opt);
+            } else {
+                var opt = new Page.ScreenshotOptions().setType(t).setFullPage(Boolean.TRUE.equals(fullPage));
+                if (quality != null) opt.setQuality(quality);
+                data = p.screenshot(opt);
+            }
+            var f = Path.of(file
+                    .replace("{case}", ctx.var(Context.CASE, String.class).orElse("global"))
+                    .replace("{page}", page)
+                    .replace("{n}", String.valueOf(pipe.next()))
+                    .replace("{time}", String.valueOf(System.currentTimeMillis())));
+            var queued = pipe.offer(page, f, data, format == null || format.isBlank() ? null : format, scale == null ? 1 : scale);
+            if (log.isTraceEnabled())
+                log.trace("screenshot of page {} {} in {}ms", page, queued ? "queued as " + f : "skipped", (System.nanoTime() - begin) / 1_000_000);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("keep last steps, console messages and page frames of each case in memory, write them with final screenshots of pages opened later only when a failure leaves the case. Named as " + Context.Recorder.NAME + ".")
+    record FlightRecorder(
+            @Info(value = "folder to write records, default 'records'", optional = true)
+            String dir,
+            @Info(value = "last actions to keep, default 50", optional = true)
+            Integer steps,
+            @Info(value = "last console messages to keep, default 100", optional = true)
+            Integer console,
+            @Info(value = "last page frames to keep, captured after each action. default 0 for only final screenshots on failure", optional = true)
+            Integer frames
+    ) implements Action {
+        public FlightRecorder() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(Context.Recorder.NAME);
+            ctx.put(Context.Recorder.NAME, new cn.zenliu.automate.browser.FlightRecorder(log,
+                    Path.of(dir == null || dir.isBlank() ? "records" : dir),
+                    steps == null ? 50 : steps,
+                    console == null ? 100 : console,
+                    frames == null ? 0 : frames));
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("start playwright tracing of a browser context. Unique named as " + TRACER + ".")
+    record TraceStart(
+            @Info(value = "browser context name, automatic prefix with '" + ContextPrefix + "'. default the context named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "folder of per case chunks, default 'traces'", optional = true)
+            String dir,
+            @Info(value = "write one chunk for each case, default true", optional = true)
+            Boolean perCase,
+            @Info(value = "capture screenshots, default false", optional = true)
+            Boolean screenshots,
+            @Info(value = "capture DOM snapshots, default false", optional = true)
+            Boolean snapshots,
+            @Info(value = "include sources, default false", optional = true)
+            Boolean sources
+    ) implements Action {
+        public TraceStart() {
+            this(null, null, null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.mustNotExists(TRACER);
+            var name = ContextPrefix + (context == null || context.isBlank() ? CONTEXT : context);
+            var cx = ctx.var(name, BrowserContext.class)
+                    .orElseThrow(() -> new IllegalStateException("tracing requires browser context " + name + ", create it by contextCreate"));
+            var t = new Tracer(log, cx, Path.of(dir == null || dir.isBlank() ? "traces" : dir), perCase == null || perCase);
+            t.start(new Tracing.StartOptions()
+                    .setScreenshots(Boolean.TRUE.equals(screenshots))
+                    .setSnapshots(Boolean.TRUE.equals(snapshots))
+                    .setSources(Boolean.TRUE.equals(sources)));
+            ctx.put(TRACER, t);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("write current trace chunk to file and start a new chunk. tracing required.")
+    record TraceChunk(
+            @Info(value = "file to write, such as 'traces/step.zip'")
+            String file,
+            @Info(value = "title of next chunk", optional = true)
+            String title
+    ) implements Action {
+        public TraceChunk() {
+            this(null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            ctx.require(TRACER, Tracer.class).chunk(Path.of(file), title);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("stop tracing and report its overhead. tracing required.")
+    record TraceStop(
+            @Info(value = "file to write the recording chunk, default discard", optional = true)
+            String file
+    ) implements Action {
+        public TraceStop() {
+            this(null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var t = ctx.require(TRACER, Tracer.class);
+            t.stop(file == null || file.isBlank() ? null : Path.of(file));
+            ctx.invalidate(TRACER);
+        }
     }
 
     @AutoService(Action.class)
@@ -258,13 +1101,21 @@ public interface Playwrights {
         @Override
         public void execute(Context ctx, Logger log) {
             var name = PagePrefix + this.name;
-            ctx.mustExists(BROWSER);
             ctx.mustNotExists(name);
             if (log.isTraceEnabled()) log.trace("fetch page {} ", name);
-            var p = ctx.require(BROWSER, Browser.class);
+            var p = browser(ctx);
             var cx = p.contexts().get(context == null ? 0 : context);
             var c = cx.pages().get(page);
             ctx.put(name, c);
+            ctx.var(Context.Recorder.NAME, cn.zenliu.automate.browser.FlightRecorder.class).ifPresent(r -> r.watch(ctx, name, c));
+            ctx.var(CONNECTION, Connection.class).ifPresent(x -> x.track(name, c, (b, found, last) -> {
+                drop(ctx, name, log);
+                var r = found != null ? found : fresh(b);
+                if (found == null && last.startsWith("http")) r.navigate(last);
+                ctx.put(name, r);
+                ctx.var(Context.Recorder.NAME, cn.zenliu.automate.browser.FlightRecorder.class).ifPresent(rec -> rec.watch(ctx, name, r));
+                return r;
+            }));
         }
     }
 
@@ -285,8 +1136,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("fetch page {} url ", page);
             if (!ctx.put(name, p.url())) {
                 throw new IllegalStateException("argument '" + name + "' already exists:  " + ctx);
@@ -338,8 +1188,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("click {} on page {}", selector, page);
             var opt = new Page.ClickOptions();
             if (strict != null) opt.strict = strict;
@@ -395,8 +1244,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("dbclick {} on page {}", selector, page);
             var opt = new Page.DblclickOptions();
             if (strict != null) opt.strict = strict;
@@ -438,8 +1286,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("check {} on page {} ", selector, page);
             var opt = new Page.CheckOptions();
             if (strict != null) opt.strict = strict;
@@ -486,8 +1333,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("drag {} and drop {} on page {}", src, tar, page);
             var opt = new Page.DragAndDropOptions();
             if (strict != null) opt.strict = strict;
@@ -531,15 +1377,566 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select {} on page {} ", selector, page);
             var opt = new Page.WaitForSelectorOptions();
             if (strict != null) opt.strict = strict;
             if (timeout != null) opt.timeout = timeout;
             if (state != null && !state.isBlank()) opt.setState(WaitForSelectorState.valueOf(state));
             var ele = p.waitForSelector(selector, opt);
-            if (ele != null) ctx.put(ElementPrefix + name, ele);
+            if (ele != null) elements(ctx).put(ctx, ElementPrefix + name, p, ele);
+        }
+    }
+
+    /**
+     * read ordered columns of {@link Extract}, objects of 'name' and 'select'.
+     */
+    ConfReader<List<Extract.Column>> ExtractColumns = (c, p) -> c.objects(p)
+            .orElseThrow(() -> new IllegalArgumentException("fields required but missing"))
+            .stream().map(o -> Extract.Column.of(o.rString("name"), o.rString("select"))).toList();
+
+    @AutoService(Action.class)
+    @Info("extract rows of fields from elements on page in batches of evaluation, store rows in context or stream as NDJSON to file.")
+    record Extract(
+            @Info(value = "page name to use, automatic prefix with '" + PagePrefix + "'")
+            String page,
+            @Info(value = "CSS selector of row elements")
+            String selector,
+            @Info(value = "fields of row in order, objects of 'name' and 'select': css selector relative to row and optional '@attribute'. " +
+                    "attribute 'text' (default) for trimmed text, 'html' for inner html, 'value' for input value, others for element attribute. " +
+                    "an empty selector refers to the row itself, such as '@href'.", read = Playwrights.class, from = "ExtractColumns")
+            List<Column> fields,
+            @Info(value = "var name to store rows as list of maps", optional = true)
+            String name,
+            @Info(value = "file to write rows as NDJSON", optional = true)
+            String file,
+            @Info(value = "append to file instead of overwrite, default false", optional = true)
+            Boolean append,
+            @Info(value = "max rows to extract, default all", optional = true)
+            Integer limit,
+            @Info(value = "rows of each evaluation, written to file before the next one. default 500", optional = true)
+            Integer batch,
+            @Info(value = "wait for first row element before extract, timeout in milliseconds", optional = true)
+            Double timeout
+    ) implements Action {
+        /**
+         * attribute suffix, a trailing '@' followed by anything else belongs to the selector, such as {@code [href^='mailto:a@b']}
+         */
+        static final java.util.regex.Pattern ATTR = java.util.regex.Pattern.compile("[A-Za-z_][\\w:.-]*");
+
+        public record Column(String name, String selector, String attr) {
+            /**
+             * @param select css selector and optional '@attribute', split on the last '@'
+             */
+            static Column of(String name, String select) {
+                var i = select.lastIndexOf('@');
+                if (i >= 0) {
+                    var attr = select.substring(i + 1).trim();
+                    if (ATTR.matcher(attr).matches()) return new Column(name, select.substring(0, i).trim(), attr);
+                }
+                return new Column(name, select.trim(), "text");
+            }
+        }
+
+        static final String SCRIPT = """
+                ([selector, fields, offset, count, mode]) => {
+                  const read = (e, attr) => {
+                    if (!e) return null;
+                    switch (attr) {
+                      case 'text': return (e.textContent || '').trim();
+                      case 'html': return e.innerHTML;
+                      case 'value': return e.value === undefined ? null : e.value;
+                      default: return e.getAttribute(attr);
+                    }
+                  };
+                  const all = document.querySelectorAll(selector);
+                  const end = Math.min(all.length, offset + count);
+                  const rows = [];
+                  for (let i = offset; i < end; i++) {
+                    const row = all[i];
+                    const r = {};
+                    for (const [k, sel, attr] of fields) r[k] = read(sel ? row.querySelector(sel) : row, attr);
+                    rows.push(r);
+                  }
+                  const ndjson = mode === 0 ? null : rows.map(r => JSON.stringify(r)).join('\\n');
+                  return {rows: mode === 1 ? null : rows, ndjson, count: rows.length, more: end < all.length};
+                }
+                """;
+
+        public Extract() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public Extract make(Conf c) {
+            var a = (Extract) Action.super.make(c);
+            if ((a.name == null || a.name.isBlank()) && (a.file == null || a.file.isBlank()))
+                throw new IllegalArgumentException("extract requires name or file");
+            return a;
+        }
+
+        @SuppressWarnings("unchecked")
+        @SneakyThrows
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var p = Playwrights.page(ctx, page);
+            if (timeout != null) p.waitForSelector(selector, new Page.WaitForSelectorOptions().setTimeout(timeout).setState(WaitForSelectorState.ATTACHED));
+            var spec = fields.stream().map(f -> List.of(f.name, f.selector, f.attr)).toList();
+            var toVar = name != null && !name.isBlank();
+            var toFile = file != null && !file.isBlank();
+            var mode = toVar ? toFile ? 2 : 0 : 1;
+            var max = limit == null || limit <= 0 ? Integer.MAX_VALUE : limit;
+            var size = batch == null || batch <= 0 ? 500 : batch;
+            var rows = toVar ? new ArrayList<Map<String, Object>>() : null;
+            var begin = System.nanoTime();
+            var done = 0;
+            try (var out = toFile ? writer() : null) {
+                while (done < max) {
+                    var count = Math.min(size, max - done);
+                    var r = (Map<String, Object>) p.evaluate(SCRIPT, List.of(selector, spec, done, count, mode));
+                    var part = (List<Map<String, Object>>) r.get("rows");
+                    var ndjson = (String) r.get("ndjson");
+                    if (out != null && ndjson != null && !ndjson.isEmpty()) {
+                        out.write(ndjson);
+                        out.write('\n');
+                        out.flush();
+                    }
+                    if (rows != null) rows.addAll(part);
+                    done += ((Number) r.get("count")).intValue();
+                    if (!Boolean.TRUE.equals(r.get("more"))) break;
+                }
+            }
+            if (rows != null) ctx.put(name, rows);
+            if (log.isTraceEnabled())
+                log.trace("extract {} rows from {} on page {}{} in {}ms", done, selector, page, toFile ? " into " + file : "", (System.nanoTime() - begin) / 1_000_000);
+        }
+
+        @SneakyThrows
+        private java.io.Writer writer() {
+            var f = Path.of(file);
+            if (f.getParent() != null) Files.createDirectories(f.getParent());
+            return Boolean.TRUE.equals(append)
+                    ? Files.newBufferedWriter(f, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                    : Files.newBufferedWriter(f);
+        }
+    }
+
+    /**
+     * read ordered fields of {@link FormFill}, objects of 'selector' and 'op'.
+     */
+    ConfReader<List<FormFill.Field>> FormFields = (c, p) -> c.objects(p)
+            .orElseThrow(() -> new IllegalArgumentException("fields required but missing"))
+            .stream().map(o -> new FormFill.Field(o.rString("selector"), o.rString("op"))).toList();
+
+    @AutoService(Action.class)
+    @Info("fill a form by an ordered list of fields, one driver call for each field or one evaluation for all fields in script mode.")
+    record FormFill(
+            @Info(value = "page name to use, automatic prefix with '" + PagePrefix + "'")
+            String page,
+            @Info(value = "fields of form in order, objects of 'selector' and 'op', the operation: 'check', 'uncheck', 'click', " +
+                    "'select:<option value>', 'fill:<text>' or other text to fill.", read = Playwrights.class, from = "FormFields")
+            List<Field> fields,
+            @Info(value = "apply all fields in a single evaluation by CSS selectors. each field must be present, visible and enabled when reached, " +
+                    "without waiting as playwright does. default false", optional = true)
+            Boolean script,
+            @Info(value = "timeout of each field in milliseconds, default 30s.", optional = true)
+            Double timeout,
+            @Info(value = "var name to store map of field selector to milliseconds spent", optional = true)
+            String timing
+    ) implements Action {
+        public record Field(String selector, String op) {
+        }
+
+        static final String SCRIPT = """
+                (fields) => {
+                  const visible = e => e.getClientRects().length > 0 && getComputedStyle(e).visibility !== 'hidden';
+                  for (let i = 0; i < fields.length; i++) {
+                    const [sel, op, val] = fields[i];
+                    const e = document.querySelector(sel);
+                    if (!e) return [i, 'not found'];
+                    if (!visible(e)) return [i, 'not visible'];
+                    if (e.matches(':disabled') || e.getAttribute('aria-disabled') === 'true') return [i, 'disabled'];
+                    switch (op) {
+                      case 'check':
+                      case 'uncheck':
+                        if (e.checked !== (op === 'check')) e.click();
+                        break;
+                      case 'click':
+                        e.click();
+                        break;
+                      case 'select':
+                        if (!Array.from(e.options || []).some(o => o.value === val)) return [i, 'without option ' + val];
+                        // set the value as a fill
+                      default: {
+                        if (op === 'fill' && e.readOnly) return [i, 'readonly'];
+                        e.focus();
+                        const d = Object.getOwnPropertyDescriptor(Object.getPrototypeOf(e), 'value');
+                        if (d && d.set) d.set.call(e, val); else e.value = val;
+                        e.dispatchEvent(new Event('input', {bubbles: true}));
+                        e.dispatchEvent(new Event('change', {bubbles: true}));
+                      }
+                    }
+                  }
+                  return null;
+                }
+                """;
+
+        public FormFill() {
+            this(null, null, null, null, null);
+        }
+
+        /**
+         * @return [operation, value]
+         */
+        static String[] operation(String v) {
+            if (v.equals("check") || v.equals("uncheck") || v.equals("click")) return new String[]{v, null};
+            if (v.startsWith("select:")) return new String[]{"select", v.substring(7)};
+            if (v.startsWith("fill:")) return new String[]{"fill", v.substring(5)};
+            return new String[]{"fill", v};
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var p = Playwrights.page(ctx, page);
+            var spent = new LinkedHashMap<String, Long>();
+            var begin = System.nanoTime();
+            if (Boolean.TRUE.equals(script)) {
+                var spec = new ArrayList<List<String>>(fields.size());
+                for (var f : fields) {
+                    var o = operation(f.op);
+                    spec.add(Arrays.asList(f.selector, o[0], o[1]));
+                }
+                var failed = (List<Object>) p.evaluate(SCRIPT, spec);
+                if (failed != null) {
+                    var i = ((Number) failed.get(0)).intValue();
+                    throw new IllegalStateException("form field " + fields.get(i).selector + " on page " + page + " " + failed.get(1)
+                            + ", " + i + " of " + fields.size() + " fields applied");
+                }
+                spent.put("*", (System.nanoTime() - begin) / 1_000_000);
+            } else {
+                var t = timeout == null ? 30_000 : timeout;
+                for (var f : fields) {
+                    var at = System.nanoTime();
+                    var o = operation(f.op);
+                    var l = p.locator(f.selector);
+                    switch (o[0]) {
+                        case "check" -> l.check(new Locator.CheckOptions().setTimeout(t));
+                        case "uncheck" -> l.uncheck(new Locator.UncheckOptions().setTimeout(t));
+                        case "click" -> l.click(new Locator.ClickOptions().setTimeout(t));
+                        case "select" -> l.selectOption(o[1], new Locator.SelectOptionOptions().setTimeout(t));
+                        default -> l.fill(o[1], new Locator.FillOptions().setTimeout(t));
+                    }
+                    spent.merge(f.selector, (System.nanoTime() - at) / 1_000_000, Long::sum);
+                }
+            }
+            if (log.isDebugEnabled()) log.debug("fill {} fields on page {} in {}ms: {}", fields.size(), page, (System.nanoTime() - begin) / 1_000_000, spent);
+            if (timing != null && !timing.isBlank()) {
+                ctx.invalidate(timing);
+                ctx.put(timing, spent);
+            }
+        }
+    }
+
+    /**
+     * read ordered outcomes of {@link PageRace}, objects of 'key' and 'when'.
+     */
+    ConfReader<List<PageRace.Outcome>> RaceOutcomes = (c, p) -> c.objects(p)
+            .orElseThrow(() -> new IllegalArgumentException("outcomes required but missing"))
+            .stream().map(o -> new PageRace.Outcome(o.rString("key"), o.rString("when"))).toList();
+
+    @AutoService(Action.class)
+    @Info("wait for the first of several outcomes on page in a single wait, store the key of the winner.")
+    record PageRace(
+            @Info(value = "page name to use, automatic prefix with '" + PagePrefix + "'")
+            String page,
+            @Info(value = "outcomes to wait for in order, objects of 'key' and 'when', the condition: 'url:<glob>' for page url, " +
+                    "'text:<text>' for text in page body, 'hidden:<css selector>' for absent or hidden element, " +
+                    "'css:<css selector>' or other css selector for a visible element. " +
+                    "when several are satisfied together, the first declared wins.", read = Playwrights.class, from = "RaceOutcomes")
+            List<Outcome> outcomes,
+            @Info(value = "var name to store the key of the first satisfied outcome")
+            String name,
+            @Info(value = "timeout in milliseconds, default 30s.", optional = true)
+            Double timeout
+    ) implements Action {
+        static final String SCRIPT = """
+                (outcomes) => {
+                  const visible = e => !!e && e.getClientRects().length > 0 && getComputedStyle(e).visibility !== 'hidden';
+                  for (const [key, kind, value] of outcomes) {
+                    switch (kind) {
+                      case 'url': if (new RegExp('^' + value + '$').test(location.href)) return key; break;
+                      case 'text': if (document.body && document.body.innerText.includes(value)) return key; break;
+                      case 'hidden': if (!visible(document.querySelector(value))) return key; break;
+                      default: if (visible(document.querySelector(value))) return key;
+                    }
+                  }
+                  return null;
+                }
+                """;
+
+        public record Outcome(String key, String when) {
+        }
+
+        public PageRace() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var p = Playwrights.page(ctx, page);
+            var spec = new ArrayList<List<String>>(outcomes.size());
+            for (var o : outcomes) {
+                var k = o.key;
+                var v = o.when;
+                var i = v.indexOf(':');
+                var kind = i < 0 ? "css" : v.substring(0, i);
+                switch (kind) {
+                    case "url" -> spec.add(List.of(k, kind, cn.zenliu.automate.browser.RoutePolicy.glob(v.substring(i + 1)).pattern()));
+                    case "text", "hidden", "css" -> spec.add(List.of(k, kind, v.substring(i + 1)));
+                    default -> spec.add(List.of(k, "css", v));
+                }
+            }
+            var begin = System.nanoTime();
+            String winner;
+            try {
+                var h = p.waitForFunction(SCRIPT, spec, new Page.WaitForFunctionOptions().setTimeout(timeout == null ? 30_000 : timeout));
+                winner = (String) h.jsonValue();
+                h.dispose();
+            } catch (TimeoutError ex) {
+                throw new IllegalStateException("none of outcomes " + outcomes.stream().map(Outcome::key).toList() + " on page " + page + " in " + (timeout == null ? 30_000 : timeout) + "ms", ex);
+            }
+            if (log.isTraceEnabled()) log.trace("race on page {} won by {} in {}ms", page, winner, (System.nanoTime() - begin) / 1_000_000);
+            ctx.invalidate(name);
+            ctx.put(name, winner);
+        }
+    }
+
+    /**
+     * @param context browser context name, null or blank for the context of current case or the default one
+     * @return request context sharing cookies with the browser context, or a standalone one named {@value #REQUEST}
+     * when there is no browser context
+     */
+    static APIRequestContext request(Context ctx, String context) {
+        var cx = Playwrights.context(ctx, context);
+        if (cx != null) return cx.request();
+        var v = ctx.var(REQUEST, APIRequestContext.class);
+        if (v.isPresent()) return v.get();
+        if (ctx.var(PLAYWRIGHT_POOL, PlaywrightPool.class).isPresent())
+            throw new IllegalStateException("http actions with a playwright pool require a browser context");
+        return ctx.computeIfAbsent(REQUEST, APIRequestContext.class, () -> playwright(ctx).request().newContext(), r -> r::dispose);
+    }
+
+    /**
+     * execute a request and read the whole body, the response is disposed.
+     *
+     * @return status and body text
+     */
+    static Map.Entry<Integer, String> http(Context ctx, Logger log, String context, String method, String url,
+                                           Map<String, String> headers, Map<String, String> params,
+                                           String body, Map<String, String> form, Double timeout) {
+        var opt = com.microsoft.playwright.options.RequestOptions.create().setMethod(method);
+        if (headers != null) headers.forEach(opt::setHeader);
+        if (params != null) params.forEach(opt::setQueryParam);
+        if (body != null) opt.setData(body);
+        if (form != null) {
+            var f = FormData.create();
+            form.forEach(f::set);
+            opt.setForm(f);
+        }
+        if (timeout != null) opt.setTimeout(timeout);
+        var begin = System.nanoTime();
+        APIResponse r = request(ctx, context).fetch(url, opt);
+        try {
+            var text = r.text();
+            if (log.isTraceEnabled())
+                log.trace("{} {} -> {} {} bytes in {}ms", method, url, r.status(), text.length(), (System.nanoTime() - begin) / 1_000_000);
+            return Map.entry(r.status(), text);
+        } finally {
+            r.dispose();
+        }
+    }
+
+    /**
+     * store status, body and values selected by json paths of body.
+     */
+    static void store(Context ctx, Map.Entry<Integer, String> res, String status, String response, Map<String, String> extract) {
+        if (status != null && !status.isBlank()) {
+            ctx.invalidate(status);
+            ctx.put(status, res.getKey());
+        }
+        if (response != null && !response.isBlank()) {
+            ctx.invalidate(response);
+            ctx.put(response, res.getValue());
+        }
+        if (extract == null || extract.isEmpty()) return;
+        var root = JsonParser.parseString(res.getValue());
+        extract.forEach((name, path) -> {
+            var v = JsonPath.value(JsonPath.parse(path).select(root));
+            ctx.invalidate(name);
+            if (v != null) ctx.put(name, v);
+        });
+    }
+
+    @AutoService(Action.class)
+    @Info("send a GET request without a page, sharing cookies with a browser context when exists.")
+    record HttpGet(
+            @Info(value = "url")
+            String url,
+            @Info(value = "browser context name to share cookies with, automatic prefix with '" + ContextPrefix + "'. default the context of current case or the one named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "request headers", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> headers,
+            @Info(value = "query parameters", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> params,
+            @Info(value = "var name to store status code", optional = true)
+            String status,
+            @Info(value = "var name to store body text", optional = true)
+            String response,
+            @Info(value = "var names to json paths of body to store, such as '$.data.items[0].id'", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> extract,
+            @Info(value = "timeout in milliseconds", optional = true)
+            Double timeout
+    ) implements Action {
+        public HttpGet() {
+            this(null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            store(ctx, http(ctx, log, context, "GET", url, headers, params, null, null, timeout), status, response, extract);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("send a POST request without a page, sharing cookies with a browser context when exists.")
+    record HttpPost(
+            @Info(value = "url")
+            String url,
+            @Info(value = "browser context name to share cookies with, automatic prefix with '" + ContextPrefix + "'. default the context of current case or the one named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "request headers", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> headers,
+            @Info(value = "query parameters", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> params,
+            @Info(value = "body text, such as json. set content-type header as needed", optional = true)
+            String body,
+            @Info(value = "url encoded form fields, used instead of body", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> form,
+            @Info(value = "var name to store status code", optional = true)
+            String status,
+            @Info(value = "var name to store body text", optional = true)
+            String response,
+            @Info(value = "var names to json paths of body to store", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> extract,
+            @Info(value = "timeout in milliseconds", optional = true)
+            Double timeout
+    ) implements Action {
+        public HttpPost() {
+            this(null, null, null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            if (body != null && form != null) throw new IllegalArgumentException("only one of body or form allowed");
+            store(ctx, http(ctx, log, context, "POST", url, headers, params, body, form, timeout), status, response, extract);
+        }
+    }
+
+    @AutoService(Action.class)
+    @Info("send a request and fail unless status, json values and body match.")
+    record HttpAssert(
+            @Info(value = "url")
+            String url,
+            @Info(value = "request method, default GET", optional = true)
+            String method,
+            @Info(value = "browser context name to share cookies with, automatic prefix with '" + ContextPrefix + "'. default the context of current case or the one named '" + CONTEXT + "'", optional = true)
+            String context,
+            @Info(value = "request headers", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> headers,
+            @Info(value = "body text", optional = true)
+            String body,
+            @Info(value = "expected status code, default any of 2xx", optional = true)
+            Integer status,
+            @Info(value = "json paths of body to expected values as text, 'null' for json null or missing", optional = true, read = Conf.class, from = "MaybeStringMap")
+            Map<String, String> json,
+            @Info(value = "text the body must contain", optional = true)
+            String contains,
+            @Info(value = "timeout in milliseconds", optional = true)
+            Double timeout
+    ) implements Action {
+        public HttpAssert() {
+            this(null, null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var m = method == null || method.isBlank() ? "GET" : method.toUpperCase();
+            var res = http(ctx, log, context, m, url, headers, null, body, null, timeout);
+            var code = res.getKey();
+            if (status != null ? code.intValue() != status : code < 200 || code >= 300)
+                throw new IllegalStateException(m + " " + url + " status " + code + ", expect " + (status != null ? status : "2xx"));
+            if (contains != null && !res.getValue().contains(contains))
+                throw new IllegalStateException(m + " " + url + " body not contains '" + contains + "'");
+            if (json == null || json.isEmpty()) return;
+            var root = JsonParser.parseString(res.getValue());
+            for (var e : json.entrySet()) {
+                var v = String.valueOf(JsonPath.value(JsonPath.parse(e.getKey()).select(root)));
+                if (!v.equals(e.getValue()))
+                    throw new IllegalStateException(m + " " + url + " json " + e.getKey() + " is '" + v + "', expect '" + e.getValue() + "'");
+            }
+        }
+    }
+
+    /**
+     * resolves when the observed element has no mutation for quiet ms, or the predicate holds;
+     * with mutated required, the quiet period starts only after the first mutation.
+     */
+    String OBSERVE = """
+            (e, [quiet, timeout, predicate, mutated]) => new Promise((resolve, reject) => {
+              e = e || document.body || document.documentElement;
+              const test = predicate ? new Function('e', 'return (' + predicate + ');') : null;
+              let count = 0, timer = null;
+              const done = (f, v) => { observer.disconnect(); clearTimeout(timer); clearTimeout(limit); f(v); };
+              const check = () => {
+                if (test && test(e)) return done(resolve, count);
+                if (!test && (!mutated || count > 0)) {
+                  clearTimeout(timer);
+                  timer = setTimeout(() => done(resolve, count), quiet);
+                }
+              };
+              const observer = new MutationObserver(list => { count += list.length; check(); });
+              const limit = setTimeout(() => done(reject, new Error('no ' + (test ? 'match' : 'quiet') + ' in ' + timeout + 'ms after ' + count + ' mutations')), timeout);
+              observer.observe(e, {childList: true, subtree: true, attributes: true, characterData: true});
+              check();
+            })
+            """;
+
+    @AutoService(Action.class)
+    @Info("wait until DOM of page, or an element of it, has no mutation for a quiet period. observed in page without polling.")
+    record WaitForDomSettled(
+            @Info(value = "page name to use, automatic prefix with '" + PagePrefix + "'")
+            String page,
+            @Info(value = "selector of observed element, default the document body", optional = true)
+            String selector,
+            @Info(value = "quiet period in milliseconds, default 500", optional = true)
+            Double quiet,
+            @Info(value = "timeout in milliseconds, default 30s.", optional = true)
+            Double timeout
+    ) implements Action {
+        public WaitForDomSettled() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var p = Playwrights.page(ctx, page);
+            var arg = Arrays.asList(quiet == null ? 500 : quiet, timeout == null ? 30_000 : timeout, null, false);
+            var begin = System.nanoTime();
+            var n = selector == null || selector.isBlank()
+                    ? p.evaluate("(a) => (" + OBSERVE + ")(null, a)", arg)
+                    : p.locator(selector).evaluate(OBSERVE, arg);
+            if (log.isTraceEnabled()) log.trace("DOM of page {} settled after {} mutations in {}ms", page, n, (System.nanoTime() - begin) / 1_000_000);
         }
     }
 
@@ -654,8 +2051,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select by role {} on page {} ", role, page);
             var opt = new Page.GetByRoleOptions();
             if (exact != null) opt.exact = exact;
@@ -694,8 +2090,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select by label {} on page {} ", pattern, page);
             var opt = new Page.GetByLabelOptions();
             if (exact != null) opt.exact = exact;
@@ -732,8 +2127,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select by text {} on page {} ", pattern, page);
             var opt = new Page.GetByTextOptions();
             if (exact != null) opt.exact = exact;
@@ -781,8 +2175,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select by text {} on page {} ", pattern, page);
             var opt = new Page.GetByPlaceholderOptions();
             if (exact != null) opt.exact = exact;
@@ -824,8 +2217,7 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
-            var p = ctx.require(PagePrefix + page, Page.class);
+            var p = Playwrights.page(ctx, page);
             if (log.isTraceEnabled()) log.trace("select by label {} on page {} ", pattern, page);
             var opt = new Page.GetByTitleOptions();
             if (exact != null) opt.exact = exact;
@@ -878,7 +2270,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("click locator {} ", locate);
             var opt = new Locator.ClickOptions();
@@ -924,7 +2315,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("click locator {} ", locate);
             var opt = new Locator.TapOptions();
@@ -977,7 +2367,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("dbclick locator {} ", locate);
             var opt = new Locator.DblclickOptions();
@@ -1013,7 +2402,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("check locate {} ", locate);
             var opt = new Locator.CheckOptions();
@@ -1054,7 +2442,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("hover element {} ", locate);
             var opt = new Locator.HoverOptions();
@@ -1085,7 +2472,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(LocatorPrefix + locate, Locator.class);
             if (log.isTraceEnabled()) log.trace("fill locate {} ", locate);
             var opt = new Locator.FillOptions();
@@ -1095,6 +2481,32 @@ public interface Playwrights {
     }
 
 
+    @AutoService(Action.class)
+    @Info("wait for mutations in a stored locator on page until a predicate holds or it is quiet after changed. observed in page without polling.")
+    record WaitForMutation(
+            @Info(value = "locator name to use, automatic prefix with '" + LocatorPrefix + "'")
+            String locate,
+            @Info(value = "javascript expression of element 'e' to satisfy, such as \"e.children.length >= 10\". not usable when page CSP forbids eval.", optional = true)
+            String predicate,
+            @Info(value = "without predicate, quiet period in milliseconds after the first mutation, default 0", optional = true)
+            Double quiet,
+            @Info(value = "timeout in milliseconds, default 30s.", optional = true)
+            Double timeout
+    ) implements Action {
+        public WaitForMutation() {
+            this(null, null, null, null);
+        }
+
+        @Override
+        public void execute(Context ctx, Logger log) {
+            var l = ctx.require(LocatorPrefix + locate, Locator.class);
+            var begin = System.nanoTime();
+            var n = l.evaluate(OBSERVE, Arrays.asList(quiet == null ? 0 : quiet, timeout == null ? 30_000 : timeout,
+                    predicate == null || predicate.isBlank() ? null : predicate, true));
+            if (log.isTraceEnabled()) log.trace("locator {} mutated {} times in {}ms", locate, n, (System.nanoTime() - begin) / 1_000_000);
+        }
+    }
+
     @AutoService(Action.class)
     @Info("click a stored element on page.")
     record ElClick(
@@ -1139,7 +2551,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(ElementPrefix + ele, ElementHandle.class);
             if (log.isTraceEnabled()) log.trace("fetch element {} ", ele);
             var opt = new ElementHandle.ClickOptions();
@@ -1195,7 +2606,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(ElementPrefix + ele, ElementHandle.class);
             if (log.isTraceEnabled()) log.trace("fetch element {} ", ele);
             var opt = new ElementHandle.DblclickOptions();
@@ -1231,7 +2641,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(ElementPrefix + ele, ElementHandle.class);
             if (log.isTraceEnabled()) log.trace("fetch element {} ", ele);
             var opt = new ElementHandle.CheckOptions();
@@ -1272,7 +2681,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(ElementPrefix + ele, ElementHandle.class);
             if (log.isTraceEnabled()) log.trace("fetch element {} ", ele);
             var opt = new ElementHandle.HoverOptions();
@@ -1303,7 +2711,6 @@ public interface Playwrights {
 
         @Override
         public void execute(Context ctx, Logger log) {
-            ctx.mustExists(BROWSER);
             var p = ctx.require(ElementPrefix + ele, ElementHandle.class);
             if (log.isTraceEnabled()) log.trace("fetch element {} ", ele);
             var opt = new ElementHandle.FillOptions();
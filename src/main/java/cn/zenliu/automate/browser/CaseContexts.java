@@ -0,0 +1,94 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Browser contexts isolated per case and per thread on a shared browser.<br/>
+ * A context is created lazily for the current thread on first use, and closed when the case ends
+ * or the forked thread is released. Cookies, storage and cache are not shared between contexts.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-05
+ */
+public final class CaseContexts implements Context.CaseListener, Context.ThreadBound, AutoCloseable {
+    private final Logger log;
+    private final Supplier<Browser.NewContextOptions> options;
+    private final @Nullable Duration timeout;
+    private final Map<Thread, BrowserContext> contexts = new ConcurrentHashMap<>();
+
+    /**
+     * @param options options of each created context
+     * @param timeout default timeout of each created context
+     */
+    public CaseContexts(Logger log, Supplier<Browser.NewContextOptions> options, @Nullable Duration timeout) {
+        this.log = log;
+        this.options = options;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param browser browser of current thread
+     * @return context of current thread
+     */
+    public BrowserContext current(Function<Context, Browser> browser, Context ctx) {
+        return contexts.computeIfAbsent(Thread.currentThread(), t -> {
+            if (log.isTraceEnabled()) log.trace("create isolated browser context for {} in {}", ctx.vars().get(Context.CASE), t.getName());
+            var c = browser.apply(ctx).newContext(options.get());
+            if (timeout != null) c.setDefaultTimeout(timeout.toMillis());
+            return c;
+        });
+    }
+
+    @Override
+    public void begin(Context ctx, String name) {
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        if (contexts.isEmpty()) return;
+        var closing = new ArrayList<>(contexts.values());
+        contexts.clear();
+        for (var e : ctx.vars().entrySet()) {
+            if (e.getValue() instanceof Page p && closing.contains(p.context())) ctx.invalidate(e.getKey());
+        }
+        closing.forEach(this::close);
+    }
+
+    @Override
+    public void release() {
+        var c = contexts.remove(Thread.currentThread());
+        if (c != null) close(c);
+    }
+
+    private void close(BrowserContext c) {
+        try {
+            c.close();
+        } catch (Exception ex) {
+            log.debug("close isolated browser context", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        var closing = new ArrayList<>(contexts.values());
+        contexts.clear();
+        closing.forEach(this::close);
+    }
+
+    @Override
+    public String toString() {
+        return "CaseContexts[" + contexts.size() + " open]";
+    }
+}
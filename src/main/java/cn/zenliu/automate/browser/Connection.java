@@ -0,0 +1,203 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Managed connection to a remote browser by CDP or ws endpoint.<br/>
+ * One browser connection is kept for each Playwright instance, so all threads using the same instance share it.
+ * A lost connection is noticed by its disconnect event and reconnected lazily on next use with exponential backoff.<br/>
+ * Pages stored in context are tracked by name with their last url and the way to restore them. After a reconnect,
+ * a dead page is re-attached to a remote page still showing that url or left to be re-created, then restored by the
+ * action which opened it: stored again with the same routes and closer, and navigated back when re-created.<br/>
+ * Browser contexts are not rebuilt: a named context of a dead page is gone, its page is re-created in the browser.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-19
+ */
+public final class Connection implements AutoCloseable {
+    private final Logger log;
+    private final String endpoint;
+    private final Function<Playwright, Browser> connect;
+    private final int attempts;
+    private final long backoff;
+    private final long maxBackoff;
+    private final Map<Playwright, Browser> browsers = new IdentityHashMap<>();
+    private final Map<String, String> urls = new HashMap<>();
+    private final Map<String, Restore> restores = new HashMap<>();
+    private final Set<Page> watched = Collections.newSetFromMap(new WeakHashMap<>());
+    private long connects;
+    private long disconnects;
+    private long revived;
+    private boolean closed;
+
+    /**
+     * @param endpoint   url of endpoint, for logging
+     * @param connect    connect a browser with the instance
+     * @param attempts   max attempts of each connect
+     * @param backoff    wait before the second attempt, doubled for each further attempt
+     * @param maxBackoff max wait between attempts
+     */
+    public Connection(Logger log, String endpoint, Function<Playwright, Browser> connect, int attempts, Duration backoff, Duration maxBackoff) {
+        if (attempts <= 0) throw new IllegalArgumentException("connect attempts must be positive");
+        this.log = log;
+        this.endpoint = endpoint;
+        this.connect = connect;
+        this.attempts = attempts;
+        this.backoff = backoff.toMillis();
+        this.maxBackoff = maxBackoff.toMillis();
+    }
+
+    /**
+     * @return connected browser of the instance, connected or reconnected when needed
+     */
+    public synchronized Browser browser(Playwright p) {
+        if (closed) throw new IllegalStateException("connection to " + endpoint + " closed");
+        var b = browsers.get(p);
+        if (b != null && b.isConnected()) return b;
+        b = connect(p);
+        browsers.put(p, b);
+        return b;
+    }
+
+    @SneakyThrows
+    private Browser connect(Playwright p) {
+        var wait = backoff;
+        RuntimeException last = null;
+        for (int i = 1; i <= attempts; i++) {
+            try {
+                var b = connect.apply(p);
+                b.onDisconnected(this::disconnected);
+                connects++;
+                if (connects > 1) log.warn("reconnected to {} after {} attempts", endpoint, i);
+                return b;
+            } catch (RuntimeException ex) {
+                last = ex;
+                if (i == attempts) break;
+                log.warn("connect to {} failed, attempt {} of {}, retry in {}ms: {}", endpoint, i, attempts, wait, ex.getMessage());
+                wait(wait);
+                if (closed) break;
+                wait = Math.min(wait * 2, maxBackoff);
+            }
+        }
+        throw new IllegalStateException("can not connect to " + endpoint + " in " + attempts + " attempts", last);
+    }
+
+    private synchronized void disconnected(Browser b) {
+        browsers.values().removeIf(x -> x == b);
+        disconnects++;
+        if (!closed) log.warn("connection to {} lost", endpoint);
+    }
+
+    /**
+     * restore a tracked page after reconnect.
+     */
+    @FunctionalInterface
+    public interface Restore {
+        /**
+         * @param browser  the reconnected browser
+         * @param attached remote page still showing the url, null to create one
+         * @param url      last url of the dead page
+         * @return the page stored in context in place of the dead one
+         */
+        Page restore(Browser browser, @Nullable Page attached, String url);
+    }
+
+    /**
+     * track a page stored in context by name, to restore it after reconnect.
+     */
+    public synchronized void track(String name, Page page, Restore restore) {
+        urls.put(name, page.url());
+        restores.put(name, restore);
+        if (watched.add(page)) {
+            page.onFrameNavigated(f -> {
+                if (f == page.mainFrame()) navigated(name, page, f.url());
+            });
+        }
+    }
+
+    private synchronized void navigated(String name, Page page, String url) {
+        urls.put(name, url);
+    }
+
+    /**
+     * stop tracking a page.
+     */
+    public synchronized void untrack(String name) {
+        urls.remove(name);
+        restores.remove(name);
+    }
+
+    /**
+     * @param name  name of page in context
+     * @param page  page currently stored, null if missing
+     * @param ctx   context holding the page variables
+     * @param p     playwright instance of current thread
+     * @return the page if alive or not tracked, else the restored page
+     */
+    public @Nullable Page revive(Context ctx, String name, @Nullable Page page, Playwright p) {
+        String url;
+        Restore restore;
+        synchronized (this) {
+            if (page != null && !page.isClosed() && page.context().browser() != null && page.context().browser().isConnected())
+                return page;
+            url = urls.get(name);
+            restore = restores.get(name);
+            if (url == null || restore == null) return page;
+        }
+        var b = browser(p);
+        Page found = null;
+        for (var cx : b.contexts()) {
+            for (var x : cx.pages()) {
+                if (x.url().equals(url) && !claimed(ctx, x)) {
+                    found = x;
+                    break;
+                }
+            }
+            if (found != null) break;
+        }
+        var reattached = found != null;
+        found = restore.restore(b, found, url);
+        synchronized (this) {
+            revived++;
+        }
+        track(name, found, restore);
+        log.warn("page {} {} at {}", name, reattached ? "re-attached" : "re-created", url);
+        return found;
+    }
+
+    private static boolean claimed(Context ctx, Page x) {
+        for (var v : ctx.vars().values()) if (v == x) return true;
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+        var all = new ArrayList<>(browsers.values());
+        browsers.clear();
+        for (var b : all) {
+            try {
+                b.close();
+            } catch (Exception ex) {
+                log.debug("close connection to {}", endpoint, ex);
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Connection[" + endpoint + ", browsers=" + browsers.size() + ", connects=" + connects
+                + ", disconnects=" + disconnects + ", revived=" + revived + ", pages=" + urls.size() + "]";
+    }
+}
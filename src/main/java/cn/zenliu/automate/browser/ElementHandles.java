@@ -0,0 +1,123 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.ElementHandle;
+import com.microsoft.playwright.Page;
+import org.slf4j.Logger;
+
+import java.util.*;
+
+/**
+ * Tracks element handles stored in context, which pin DOM nodes in the page until disposed.<br/>
+ * A handle is disposed when its variable is invalidated or overwritten, when its page navigates or closes,
+ * and when the case which created it ends.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-13
+ */
+public final class ElementHandles implements Context.CaseListener {
+    private final Logger log;
+    private final Map<Page, Map<String, ElementHandle>> pages = new IdentityHashMap<>();
+    private final Map<String, String> cases = new HashMap<>();
+    /**
+     * handles of navigated pages, their nodes are already released with the old document.
+     */
+    private final Set<ElementHandle> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long disposed;
+
+    public ElementHandles(Logger log) {
+        this.log = log;
+    }
+
+    /**
+     * store a handle in context, replace and dispose a handle stored with the same name.
+     */
+    public void put(Context ctx, String name, Page p, ElementHandle h) {
+        ctx.invalidate(name);
+        synchronized (this) {
+            var m = pages.get(p);
+            if (m == null) {
+                m = new HashMap<>();
+                pages.put(p, m);
+                p.onFrameNavigated(f -> {
+                    if (f == p.mainFrame()) release(ctx, p);
+                });
+                p.onClose(x -> release(ctx, x));
+            }
+            m.put(name, h);
+            ctx.var(Context.CASE, String.class).ifPresent(c -> cases.put(name, c));
+        }
+        if (!ctx.put(name, h, () -> dispose(p, name, h)))
+            throw new IllegalStateException("element " + name + " already exists");
+    }
+
+    private void dispose(Page p, String name, ElementHandle h) {
+        boolean gone;
+        synchronized (this) {
+            var m = pages.get(p);
+            if (m != null && m.get(name) == h) m.remove(name);
+            cases.remove(name);
+            disposed++;
+            gone = stale.remove(h);
+        }
+        if (gone || p.isClosed()) return;
+        try {
+            h.dispose();
+        } catch (Exception ex) {
+            log.debug("dispose element {}", name, ex);
+        }
+    }
+
+    /**
+     * invalidate handles of a navigated, closed or dead page, without disposing them.
+     */
+    public void release(Context ctx, Page p) {
+        List<String> names;
+        synchronized (this) {
+            var m = pages.get(p);
+            if (m == null || m.isEmpty()) return;
+            names = new ArrayList<>(m.keySet());
+            stale.addAll(m.values());
+        }
+        if (log.isTraceEnabled()) log.trace("release {} elements of navigated page {}", names.size(), p);
+        names.forEach(ctx::invalidate);
+        if (p.isClosed()) {
+            synchronized (this) {
+                pages.remove(p);
+            }
+        }
+    }
+
+    /**
+     * @return live handles of page
+     */
+    public synchronized int live(Page p) {
+        var m = pages.get(p);
+        return m == null ? 0 : m.size();
+    }
+
+    @Override
+    public void begin(Context ctx, String name) {
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>();
+            cases.forEach((k, v) -> {
+                if (v.equals(name)) names.add(k);
+            });
+        }
+        if (names.isEmpty()) return;
+        if (log.isTraceEnabled()) log.trace("dispose {} elements of case {}", names.size(), name);
+        names.forEach(ctx::invalidate);
+    }
+
+    @Override
+    public synchronized String toString() {
+        var b = new StringBuilder("ElementHandles[disposed=").append(disposed);
+        pages.forEach((p, m) -> b.append(", ").append(p.url()).append('=').append(m.size()));
+        return b.append(']').toString();
+    }
+}
@@ -0,0 +1,207 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.options.ScreenshotType;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flight recorder keeping the last steps, console messages and page frames of each case in ring buffers.<br/>
+ * Nothing is written unless a failure leaves a case or a top level action, then buffers of the case and a final
+ * screenshot of each open page are written once into a folder named by the failed action and time.<br/>
+ * Pages are watched when opened, frames and screenshots are only taken by the thread that opened the page,
+ * as playwright objects are confined to the thread of their playwright instance.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-15
+ */
+public final class FlightRecorder implements Context.Recorder, Context.CaseListener, Context.ThreadBound {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * bounded ring buffer, the oldest entry is dropped when full.
+     */
+    static final class Ring<T> {
+        private final Object[] items;
+        private int head, size;
+
+        Ring(int capacity) {
+            items = new Object[Math.max(0, capacity)];
+        }
+
+        synchronized void add(T v) {
+            if (items.length == 0) return;
+            items[(head + size) % items.length] = v;
+            if (size < items.length) size++;
+            else head = (head + 1) % items.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized List<T> drain() {
+            var l = new ArrayList<T>(size);
+            for (int i = 0; i < size; i++) l.add((T) items[(head + i) % items.length]);
+            Arrays.fill(items, null);
+            head = size = 0;
+            return l;
+        }
+    }
+
+    record Step(long at, String thread, String program, String action, long nanos, @Nullable String error) {
+        @Override
+        public String toString() {
+            return TIME.format(Instant.ofEpochMilli(at)) + " [" + thread + "] " + program + "." + action
+                    + " " + String.format("%.3fms", nanos / 1e6) + (error == null ? "" : " FAILED " + error);
+        }
+    }
+
+    record Frame(long at, String page, byte[] data) {
+    }
+
+    /**
+     * rings of one case, shared by the threads running it.
+     */
+    static final class Records {
+        final Ring<Step> steps;
+        final Ring<String> console;
+        final Ring<Frame> frames;
+
+        Records(int steps, int console, int frames) {
+            this.steps = new Ring<>(steps);
+            this.console = new Ring<>(console);
+            this.frames = new Ring<>(frames);
+        }
+    }
+
+    private final Logger log;
+    private final Path dir;
+    private final int steps;
+    private final int console;
+    private final int frames;
+    private final Map<String, Records> cases = new ConcurrentHashMap<>();
+    /**
+     * watched pages by the thread opened them, only touched by that thread.
+     */
+    private final Map<Thread, Map<Page, String>> pages = new ConcurrentHashMap<>();
+    private final Set<Exception> flushed = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    /**
+     * @param steps   last actions kept
+     * @param console last console messages kept
+     * @param frames  last page frames kept, zero to only capture pages when flush
+     */
+    public FlightRecorder(Logger log, Path dir, int steps, int console, int frames) {
+        this.log = log;
+        this.dir = dir;
+        this.steps = steps;
+        this.console = console;
+        this.frames = frames;
+    }
+
+    /**
+     * records of current case, actions out of any case share the records named by empty string.
+     */
+    private Records records(Context ctx) {
+        var name = ctx.vars().get(Context.CASE) instanceof String s ? s : "";
+        return cases.computeIfAbsent(name, k -> new Records(steps, console, frames));
+    }
+
+    /**
+     * watch a page opened by current thread, frames and final screenshots are only taken by this thread.
+     *
+     * @param name variable name of the page
+     */
+    public void watch(Context ctx, String name, Page p) {
+        pages.computeIfAbsent(Thread.currentThread(), t -> new LinkedHashMap<>()).put(p, name);
+        p.onConsoleMessage(m -> records(ctx).console.add(TIME.format(Instant.now()) + " " + name + " " + m.type() + ": " + m.text()));
+        p.onPageError(m -> records(ctx).console.add(TIME.format(Instant.now()) + " " + name + " pageerror: " + m));
+    }
+
+    /**
+     * @return open pages watched by current thread
+     */
+    private Map<Page, String> owned() {
+        var m = pages.get(Thread.currentThread());
+        if (m == null) return Map.of();
+        m.keySet().removeIf(Page::isClosed);
+        return m;
+    }
+
+    @Override
+    public void record(Context ctx, String program, Action act, long nanos, @Nullable Exception error) {
+        var r = records(ctx);
+        r.steps.add(new Step(System.currentTimeMillis(), Thread.currentThread().getName(), program, act.action(), nanos, error == null ? null : error.toString()));
+        if (frames == 0 || error != null) return;
+        for (var e : owned().entrySet()) {
+            try {
+                r.frames.add(new Frame(System.currentTimeMillis(), e.getValue(), e.getKey().screenshot(new Page.ScreenshotOptions().setType(ScreenshotType.JPEG).setQuality(50))));
+            } catch (Exception ex) {
+                log.debug("record frame of {}", e.getValue(), ex);
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Override
+    public void flush(Context ctx, String action, Exception cause) {
+        if (!flushed.add(cause)) return;
+        var r = records(ctx);
+        var out = Files.createDirectories(dir.resolve((action + "-" + TIME.format(Instant.now())).replaceAll("[\\\\/:*?\"<>|\\s]", "_")));
+        var b = new StringBuilder();
+        for (var s : r.steps.drain()) b.append(s).append('\n');
+        var w = new StringWriter();
+        cause.printStackTrace(new PrintWriter(w));
+        b.append('\n').append(w);
+        Files.writeString(out.resolve("steps.txt"), b);
+        var c = r.console.drain();
+        if (!c.isEmpty()) Files.writeString(out.resolve("console.txt"), String.join("\n", c));
+        var n = 0;
+        for (var f : r.frames.drain()) {
+            Files.write(out.resolve(String.format("frame-%03d-%s.jpg", n++, safe(f.page))), f.data);
+        }
+        for (var e : owned().entrySet()) {
+            try {
+                e.getKey().screenshot(new Page.ScreenshotOptions().setPath(out.resolve("final-" + safe(e.getValue()) + ".png")));
+            } catch (Exception ex) {
+                log.debug("capture final page {}", e.getValue(), ex);
+            }
+        }
+        log.error("flight records of {} written to {}", action, out);
+    }
+
+    private static String safe(String name) {
+        return name.replaceAll("[\\\\/:*?\"<>|\\s]", "_");
+    }
+
+    @Override
+    public void begin(Context ctx, String name) {
+        cases.put(name, new Records(steps, console, frames));
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        cases.remove(name);
+    }
+
+    @Override
+    public void release() {
+        pages.remove(Thread.currentThread());
+    }
+
+    @Override
+    public String toString() {
+        return "FlightRecorder[" + dir + "]";
+    }
+}
@@ -0,0 +1,115 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.options.HarNotFound;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HAR record and replay for pages.<br/>
+ * Each page uses its own archive named by current case and page name under a folder,
+ * so a replay run finds what the record run wrote.<br/>
+ * Recording writes the archive when the browser context of the page closes.
+ * Replaying serves matched requests from the archive, misses are counted and either fall through to network or aborted.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-07
+ */
+public final class Har implements Context.CaseListener {
+    public enum Mode {
+        OFF, RECORD, REPLAY;
+
+        public static Mode of(String v) {
+            try {
+                return valueOf(v.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("invalid HAR mode '" + v + "', expect one of off, record or replay");
+            }
+        }
+    }
+
+    private final Logger log;
+    private final Mode mode;
+    private final Path dir;
+    private final @Nullable String url;
+    private final boolean fallthrough;
+    private final Set<Page> applied = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+    private final Map<String, LongAdder> misses = new ConcurrentHashMap<>();
+
+    /**
+     * @param url         glob of urls to record or replay, null for all
+     * @param fallthrough send missed requests to network on replay, else abort them
+     */
+    public Har(Logger log, Mode mode, Path dir, @Nullable String url, boolean fallthrough) {
+        this.log = log;
+        this.mode = mode;
+        this.dir = dir;
+        this.url = url;
+        this.fallthrough = fallthrough;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * apply HAR routing to a page.
+     *
+     * @param mode  override mode, null to use the default
+     * @param fresh the page has no routes yet (new or reset), else skip a page already applied
+     */
+    @SneakyThrows
+    public void apply(Context ctx, String page, Page p, @Nullable Mode mode, boolean fresh) {
+        var m = mode == null ? this.mode : mode;
+        if (m == Mode.OFF || (!applied.add(p) && !fresh)) return;
+        var file = file(ctx, page);
+        var opt = new Page.RouteFromHAROptions();
+        if (url != null) opt.setUrl(url);
+        if (m == Mode.RECORD) {
+            Files.createDirectories(file.getParent());
+            if (log.isTraceEnabled()) log.trace("record HAR of {} into {}", page, file);
+            p.routeFromHAR(file, opt.setUpdate(true));
+            return;
+        }
+        if (!Files.exists(file)) throw new IllegalStateException("missing HAR " + file + " to replay " + page);
+        if (log.isTraceEnabled()) log.trace("replay HAR of {} from {}", page, file);
+        // registered first, so only requests missed by the HAR fall back to here
+        p.route(url == null ? "**/*" : url, route -> {
+            misses.computeIfAbsent(route.request().url(), k -> new LongAdder()).increment();
+            if (fallthrough) route.fallback();
+            else route.abort();
+        });
+        p.routeFromHAR(file, opt.setNotFound(HarNotFound.FALLBACK));
+    }
+
+    private Path file(Context ctx, String page) {
+        var c = ctx.var(Context.CASE, String.class).orElse("global");
+        return dir.resolve((c + "." + page + ".har").replaceAll("[\\\\/:*?\"<>|]", "_"));
+    }
+
+    @Override
+    public void begin(Context ctx, String name) {
+        misses.clear();
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        if (misses.isEmpty()) return;
+        var total = misses.values().stream().mapToLong(LongAdder::sum).sum();
+        log.warn("case {} missed {} requests ({} urls) in HAR, {}", name, total, misses.size(), fallthrough ? "sent to network" : "aborted");
+        if (log.isDebugEnabled()) misses.forEach((k, v) -> log.debug("HAR miss {} x{}", k, v.sum()));
+    }
+
+    @Override
+    public String toString() {
+        return "Har[" + mode + ", dir=" + dir + ", misses=" + misses.size() + "]";
+    }
+}
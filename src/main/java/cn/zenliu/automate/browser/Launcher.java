@@ -0,0 +1,70 @@
+package cn.zenliu.automate.browser;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings of a browser launched by this process.<br/>
+ * Launch time and the time of the first navigation are reported together with whether the profile was warm,
+ * that is a persistent user data folder which already existed, so cold and warm runs can be compared.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-18
+ */
+public final class Launcher {
+    private final Logger log;
+    private final String type;
+    private final @Nullable Path profile;
+    private final boolean warm;
+    private final AtomicLong launch = new AtomicLong(-1);
+    private final AtomicLong first = new AtomicLong(-1);
+
+    /**
+     * @param profile persistent user data folder, null for a temporary profile
+     */
+    public Launcher(Logger log, String type, @Nullable Path profile) {
+        this.log = log;
+        this.type = type;
+        this.profile = profile;
+        this.warm = profile != null && isNotEmpty(profile);
+    }
+
+    private static boolean isNotEmpty(Path dir) {
+        if (!Files.isDirectory(dir)) return false;
+        try (var s = Files.list(dir)) {
+            return s.findAny().isPresent();
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * record time of a launch started at begin, only the first launch is kept.
+     */
+    public void launched(long begin) {
+        var n = System.nanoTime() - begin;
+        if (launch.compareAndSet(-1, n))
+            log.info("launched {} in {}ms, {} profile", type, n / 1_000_000, profile == null ? "temporary" : warm ? "warm" : "cold");
+    }
+
+    /**
+     * record time of a navigation started at begin, only the first navigation is kept.
+     */
+    public void navigated(long begin) {
+        if (first.get() >= 0) return;
+        var n = System.nanoTime() - begin;
+        if (first.compareAndSet(-1, n))
+            log.info("first navigation of {} in {}ms, {} profile", type, n / 1_000_000, profile == null ? "temporary" : warm ? "warm" : "cold");
+    }
+
+    @Override
+    public String toString() {
+        return "Launcher[" + type + (profile == null ? "" : ", profile=" + profile + (warm ? " warm" : " cold"))
+                + ", launch=" + (launch.get() < 0 ? "-" : launch.get() / 1_000_000 + "ms")
+                + ", firstNavigation=" + (first.get() < 0 ? "-" : first.get() / 1_000_000 + "ms") + "]";
+    }
+}
@@ -0,0 +1,175 @@
+package cn.zenliu.automate.browser;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Page;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.*;
+
+/**
+ * Pool of warm pages, reused across cases instead of open and close each time.<br/>
+ * Pages are grouped by owner: the browser context they open in, or the browser when each page owns its context.
+ * A released page is reset (storage cleared, routes removed, navigated to about:blank) and kept idle,
+ * unless it crashed, was used too many times or its JS heap grew too large, in which case it is closed.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-06
+ */
+public final class PagePool implements AutoCloseable {
+    private static final String CLEAR_STORAGE = "() => { try { localStorage.clear(); sessionStorage.clear(); } catch (e) {} }";
+    private static final String USED_HEAP = "() => (performance.memory && performance.memory.usedJSHeapSize) || 0";
+    private final Logger log;
+    private final int size;
+    private final int maxUses;
+    private final long maxHeap;
+    private final Map<Object, Deque<Page>> idle = new HashMap<>();
+    private final Map<Page, Pooled> pages = new IdentityHashMap<>();
+    private final Set<BrowserContext> watched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long hits, misses, evicted;
+    private boolean closed;
+
+    static final class Pooled {
+        final Object owner;
+        int uses;
+        volatile boolean crashed;
+
+        Pooled(Object owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * @param size    idle pages kept for each owner
+     * @param maxUses evict page after this uses, zero for unlimited
+     * @param maxHeap evict page when used JS heap exceeds this bytes, zero for unlimited. only chromium reports heap.
+     */
+    public PagePool(Logger log, int size, int maxUses, long maxHeap) {
+        if (size <= 0) throw new IllegalArgumentException("page pool size must be positive");
+        this.log = log;
+        this.size = size;
+        this.maxUses = maxUses;
+        this.maxHeap = maxHeap;
+    }
+
+    /**
+     * pre-open pages until the owner has {@link #size} idle pages.
+     *
+     * @param context context to open pages in, null for pages owning their context
+     */
+    public synchronized void warm(@Nullable BrowserContext context, @Nullable Browser browser) {
+        if (closed) throw new IllegalStateException("page pool closed");
+        var q = idle.computeIfAbsent(owner(context, browser), k -> new ArrayDeque<>());
+        if (log.isTraceEnabled()) log.trace("warm {} pages for {}", size - q.size(), owner(context, browser));
+        while (q.size() < size) q.push(open(context, browser));
+    }
+
+    /**
+     * @param context context to open pages in, null for pages owning their context
+     * @return an idle page or a new one
+     */
+    public synchronized Page acquire(@Nullable BrowserContext context, @Nullable Browser browser) {
+        if (closed) throw new IllegalStateException("page pool closed");
+        var q = idle.get(owner(context, browser));
+        Page p;
+        while (q != null && (p = q.poll()) != null) {
+            var s = pages.get(p);
+            if (s == null || s.crashed || p.isClosed()) {
+                evict(p);
+                continue;
+            }
+            hits++;
+            s.uses++;
+            return p;
+        }
+        misses++;
+        p = open(context, browser);
+        pages.get(p).uses++;
+        return p;
+    }
+
+    /**
+     * return a page to the pool, reset or evict it.
+     */
+    public void release(Page p) {
+        Pooled s;
+        synchronized (this) {
+            s = pages.get(p);
+            if (s == null) return;
+            if (closed || s.crashed || p.isClosed() || (maxUses > 0 && s.uses >= maxUses)) {
+                evict(p);
+                return;
+            }
+        }
+        try {
+            if (maxHeap > 0 && ((Number) p.evaluate(USED_HEAP)).longValue() > maxHeap) {
+                synchronized (this) {
+                    evict(p);
+                }
+                return;
+            }
+            p.evaluate(CLEAR_STORAGE);
+            p.unrouteAll();
+            if (s.owner instanceof Browser) p.context().clearCookies();
+            p.navigate("about:blank");
+        } catch (Exception ex) {
+            log.debug("reset pooled page failed", ex);
+            synchronized (this) {
+                evict(p);
+            }
+            return;
+        }
+        synchronized (this) {
+            var q = idle.computeIfAbsent(s.owner, k -> new ArrayDeque<>());
+            if (closed || q.size() >= size) evict(p);
+            else q.push(p);
+        }
+    }
+
+    private Object owner(@Nullable BrowserContext context, @Nullable Browser browser) {
+        return context != null ? context : browser;
+    }
+
+    private Page open(@Nullable BrowserContext context, @Nullable Browser browser) {
+        var p = context != null ? context.newPage() : browser.newPage();
+        var s = new Pooled(owner(context, browser));
+        p.onCrash(x -> s.crashed = true);
+        pages.put(p, s);
+        if (context != null && watched.add(context)) context.onClose(this::drop);
+        return p;
+    }
+
+    private synchronized void drop(BrowserContext context) {
+        watched.remove(context);
+        pages.values().removeIf(x -> x.owner == context);
+        idle.remove(context);
+    }
+
+    private void evict(Page p) {
+        pages.remove(p);
+        evicted++;
+        if (log.isTraceEnabled()) log.trace("evict pooled page {}", p);
+        try {
+            if (!p.isClosed()) p.close();
+        } catch (Exception ex) {
+            log.debug("close pooled page", ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        var all = new ArrayList<Page>();
+        idle.values().forEach(all::addAll);
+        idle.clear();
+        all.forEach(this::evict);
+    }
+
+    @Override
+    public synchronized String toString() {
+        var n = 0;
+        for (var q : idle.values()) n += q.size();
+        return "PagePool[size=" + size + ", idle=" + n + ", inUse=" + (pages.size() - n) + ", hits=" + hits + ", misses=" + misses + ", evicted=" + evicted + "]";
+    }
+}
@@ -0,0 +1,225 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.PlaywrightException;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Pool of Playwright driver instances.<br/>
+ * Playwright objects are not thread-safe, so each instance is bound to one thread at a time.
+ * Instances are created lazily up to a maximum size, checked before reuse, and returned to the pool
+ * when the thread leaves a forked branch ({@link Context.ThreadBound#release()}) or dies.<br/>
+ * Browsers are connected per instance through the registered connector, so pages and locators created on a
+ * thread always belong to the instance of that thread.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-04
+ */
+public final class PlaywrightPool implements Context.ThreadBound, AutoCloseable {
+    private final Logger log;
+    private final @Nullable Map<String, String> env;
+    private final int max;
+    private final long checkNanos;
+    private final long waitNanos;
+    private final Map<Thread, Worker> bound = new HashMap<>();
+    private final Deque<Worker> idle = new ArrayDeque<>();
+    private volatile Function<Playwright, Browser> connector;
+    private int size;
+    private boolean closed;
+
+    static final class Worker {
+        final Playwright playwright;
+        Browser browser;
+        long checked;
+
+        Worker(Playwright playwright) {
+            this.playwright = playwright;
+            this.checked = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param env   environment of created drivers
+     * @param max   max instances
+     * @param check idle instances older than this are checked before reuse
+     * @param wait  max wait for a free instance
+     */
+    public PlaywrightPool(Logger log, @Nullable Map<String, String> env, int max, Duration check, Duration wait) {
+        if (max <= 0) throw new IllegalArgumentException("pool size must be positive");
+        this.log = log;
+        this.env = env;
+        this.max = max;
+        this.checkNanos = check.toNanos();
+        this.waitNanos = wait.toNanos();
+    }
+
+    /**
+     * @return instance bound to current thread, created or reused when not bound yet.
+     */
+    public Playwright acquire() {
+        return worker().playwright;
+    }
+
+    /**
+     * register how browsers are connected, each instance connects its own browser lazily.
+     */
+    public void connector(Function<Playwright, Browser> connector) {
+        this.connector = connector;
+    }
+
+    public boolean connected() {
+        return connector != null;
+    }
+
+    /**
+     * @return browser of current thread's instance
+     */
+    public Browser browser() {
+        var c = connector;
+        if (c == null) throw new IllegalStateException("no browser connected for playwright pool");
+        var w = worker();
+        if (w.browser == null || !w.browser.isConnected()) {
+            if (log.isTraceEnabled()) log.trace("connect browser for {}", Thread.currentThread().getName());
+            w.browser = c.apply(w.playwright);
+        }
+        return w.browser;
+    }
+
+    /**
+     * slots are reserved under the lock, driver creation and health checks run outside of it,
+     * so a slow driver start never blocks other threads or release.
+     */
+    @SneakyThrows
+    private Worker worker() {
+        var t = Thread.currentThread();
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("playwright pool closed");
+            var w = bound.get(t);
+            if (w != null) return w;
+        }
+        var deadline = System.nanoTime() + waitNanos;
+        while (true) {
+            Worker w;
+            synchronized (this) {
+                if (closed) throw new IllegalStateException("playwright pool closed");
+                reclaim();
+                w = idle.poll();
+                if (w == null) {
+                    if (size >= max) {
+                        var remain = deadline - System.nanoTime();
+                        if (remain <= 0)
+                            throw new IllegalStateException("no playwright instance available in " + Duration.ofNanos(waitNanos) + ", max " + max);
+                        wait(Math.max(1, remain / 1_000_000));
+                        continue;
+                    }
+                    size++;
+                }
+            }
+            if (w == null) {
+                try {
+                    w = create();
+                } catch (RuntimeException ex) {
+                    synchronized (this) {
+                        size--;
+                        notifyAll();
+                    }
+                    throw ex;
+                }
+            } else if (!healthy(w)) {
+                destroy(w);
+                continue;
+            }
+            synchronized (this) {
+                if (!closed) {
+                    bound.put(t, w);
+                    return w;
+                }
+            }
+            destroy(w);
+            throw new IllegalStateException("playwright pool closed");
+        }
+    }
+
+    /**
+     * return instance of current thread to the pool.
+     */
+    @Override
+    public synchronized void release() {
+        var w = bound.remove(Thread.currentThread());
+        if (w != null) {
+            idle.push(w);
+            notifyAll();
+        }
+    }
+
+    private void reclaim() {
+        var it = bound.entrySet().iterator();
+        while (it.hasNext()) {
+            var e = it.next();
+            if (!e.getKey().isAlive()) {
+                it.remove();
+                idle.push(e.getValue());
+            }
+        }
+    }
+
+    private Worker create() {
+        if (log.isTraceEnabled()) log.trace("create playwright instance {} of {}", size, max);
+        return new Worker(env != null && !env.isEmpty()
+                ? Playwright.create(new Playwright.CreateOptions().setEnv(env))
+                : Playwright.create());
+    }
+
+    private boolean healthy(Worker w) {
+        var now = System.nanoTime();
+        if (now - w.checked < checkNanos) return true;
+        try {
+            w.playwright.request().newContext().dispose();
+            if (w.browser != null && !w.browser.isConnected()) w.browser = null;
+            w.checked = now;
+            return true;
+        } catch (PlaywrightException ex) {
+            log.warn("drop unhealthy playwright instance", ex);
+            return false;
+        }
+    }
+
+    private void destroy(Worker w) {
+        synchronized (this) {
+            size--;
+            notifyAll();
+        }
+        try {
+            w.playwright.close();
+        } catch (Exception ex) {
+            log.debug("close playwright instance", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        List<Worker> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<>(idle);
+            all.addAll(bound.values());
+            idle.clear();
+            bound.clear();
+            notifyAll();
+        }
+        all.forEach(this::destroy);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PlaywrightPool[size=" + size + ", max=" + max + ", bound=" + bound.size() + ", idle=" + idle.size() + "]";
+    }
+}
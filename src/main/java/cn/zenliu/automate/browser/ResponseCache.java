@@ -0,0 +1,338 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.APIResponse;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Route;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP response cache for pages, shared by all pages of the process and across runs.<br/>
+ * Bodies are stored content-addressed on disk ({@code objects/<sha256>}), each cached url has an index entry
+ * ({@code index/<sha256 of url>}) holding status, headers and freshness. Recently used entries are kept in a
+ * memory LRU bounded by body bytes.<br/>
+ * Only anonymous GET requests are served, requests carrying {@code Authorization} or cookies fall back untouched.
+ * Only responses with status 200 and {@code max-age} or a validator ({@code ETag}, {@code Last-Modified}) are stored,
+ * {@code no-store}, {@code private}, {@code Set-Cookie} and {@code Vary} other than {@code Accept-Encoding} are not.
+ * A url found uncacheable falls back to later routes and the network for the rest of the case.
+ * Stale or {@code no-cache} entries are revalidated with conditional requests.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-09
+ */
+public final class ResponseCache implements Context.CaseListener {
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])(?:s-)?max-age\\s*=\\s*(\\d+)");
+    /**
+     * headers describing the transfer, body from route fetch is already decoded.
+     */
+    private static final Set<String> TRANSFER = Set.of("content-encoding", "content-length", "transfer-encoding", "connection", "keep-alive");
+
+    record Entry(
+            String url,
+            int status,
+            Map<String, String> headers,
+            String hash,
+            long stored,
+            long maxAge,
+            boolean noCache,
+            @Nullable String etag,
+            @Nullable String modified
+    ) {
+        boolean fresh(long now) {
+            return !noCache && maxAge > 0 && now - stored < maxAge * 1000;
+        }
+
+        Entry refresh(long now) {
+            return new Entry(url, status, headers, hash, now, maxAge, noCache, etag, modified);
+        }
+    }
+
+    private final Logger log;
+    private final Path index;
+    private final Path objects;
+    private final @Nullable Pattern url;
+    private final long memory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> bodies = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> skipped = Collections.newSetFromMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > 4096;
+        }
+    });
+    private long used;
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * @param dir    cache folder
+     * @param url    glob of cached urls, null for all
+     * @param memory max bytes of bodies kept in memory
+     */
+    @SneakyThrows
+    public ResponseCache(Logger log, Path dir, @Nullable String url, long memory) {
+        this.log = log;
+        this.index = Files.createDirectories(dir.resolve("index"));
+        this.objects = Files.createDirectories(dir.resolve("objects"));
+        this.url = url == null ? null : RoutePolicy.glob(url);
+        this.memory = memory;
+    }
+
+    /**
+     * register the cache on a page.
+     */
+    public void apply(Page p) {
+        p.route("**/*", this::handle);
+    }
+
+    @SneakyThrows
+    void handle(Route route) {
+        var req = route.request();
+        var u = req.url();
+        if (!"GET".equals(req.method()) || (url != null && !url.matcher(u).matches()) || !u.startsWith("http")) {
+            route.fallback();
+            return;
+        }
+        var key = sha256(u.getBytes(StandardCharsets.UTF_8));
+        if (skipped(key) || personal(req.allHeaders())) {
+            bypassed.increment();
+            route.fallback();
+            return;
+        }
+        var e = lookup(key);
+        var cached = e == null ? null : body(e.hash);
+        if (cached == null) e = null;
+        var now = System.currentTimeMillis();
+        if (e != null && e.fresh(now)) {
+            fulfill(route, e, cached);
+            return;
+        }
+        var headers = new HashMap<>(req.headers());
+        if (e != null) {
+            if (e.etag != null) headers.put("if-none-match", e.etag);
+            if (e.modified != null) headers.put("if-modified-since", e.modified);
+        }
+        var res = route.fetch(new Route.FetchOptions().setHeaders(headers));
+        try {
+            if (e != null && res.status() == 304) {
+                revalidated.increment();
+                var r = e.refresh(now);
+                save(key, r);
+                fulfill(route, r, cached);
+                return;
+            }
+            misses.increment();
+            var r = entry(u, res, now);
+            if (r == null) {
+                skip(key);
+                route.fulfill(new Route.FulfillOptions().setResponse(res));
+                return;
+            }
+            var body = res.body();
+            store(key, r, body);
+            route.fulfill(new Route.FulfillOptions().setResponse(res).setBodyBytes(body).setHeaders(strip(res.headers())));
+        } finally {
+            res.dispose();
+        }
+    }
+
+    private void fulfill(Route route, Entry e, byte[] body) {
+        bytes.add(body.length);
+        route.fulfill(new Route.FulfillOptions().setStatus(e.status).setHeaders(e.headers).setBodyBytes(body));
+    }
+
+    private static Map<String, String> strip(Map<String, String> headers) {
+        var m = new LinkedHashMap<String, String>();
+        headers.forEach((k, v) -> {
+            if (!TRANSFER.contains(k.toLowerCase())) m.put(k, v);
+        });
+        return m;
+    }
+
+    private static boolean personal(Map<String, String> headers) {
+        for (var k : headers.keySet()) {
+            var n = k.toLowerCase();
+            if (n.equals("authorization") || n.equals("cookie")) return true;
+        }
+        return false;
+    }
+
+    private @Nullable Entry entry(String u, APIResponse res, long now) {
+        if (res.status() != 200) return null;
+        var h = res.headers();
+        var cc = h.getOrDefault("cache-control", "").toLowerCase();
+        if (cc.contains("no-store") || cc.contains("private") || h.containsKey("set-cookie")) return null;
+        var vary = h.get("vary");
+        if (vary != null && !vary.isBlank() && !vary.trim().equalsIgnoreCase("accept-encoding")) return null;
+        var m = MAX_AGE.matcher(cc);
+        var age = m.find() ? Long.parseLong(m.group(1)) : 0L;
+        var etag = h.get("etag");
+        var modified = h.get("last-modified");
+        if (age <= 0 && etag == null && modified == null) return null;
+        return new Entry(u, res.status(), strip(h), "", now, age, cc.contains("no-cache"), etag, modified);
+    }
+
+    //region storage
+
+    private synchronized boolean skipped(String key) {
+        return skipped.contains(key);
+    }
+
+    private synchronized void skip(String key) {
+        skipped.add(key);
+        if (entries.remove(key) != null) {
+            try {
+                Files.deleteIfExists(index.resolve(key));
+            } catch (IOException ex) {
+                log.debug("remove cache index {}", key, ex);
+            }
+        }
+    }
+
+    private synchronized @Nullable Entry lookup(String key) {
+        var e = entries.get(key);
+        if (e != null) return e;
+        e = load(key);
+        if (e != null) entries.put(key, e);
+        return e;
+    }
+
+    private @Nullable byte[] body(String hash) {
+        synchronized (this) {
+            var b = bodies.get(hash);
+            if (b != null) {
+                memoryHits.increment();
+                return b;
+            }
+        }
+        var f = objects.resolve(hash);
+        if (!Files.exists(f)) return null;
+        try {
+            var b = Files.readAllBytes(f);
+            diskHits.increment();
+            remember(hash, b);
+            return b;
+        } catch (IOException ex) {
+            log.debug("read cached body {}", f, ex);
+            return null;
+        }
+    }
+
+    private synchronized void remember(String hash, byte[] body) {
+        if (body.length > memory) return;
+        if (bodies.put(hash, body) == null) used += body.length;
+        var it = bodies.entrySet().iterator();
+        while (used > memory && it.hasNext()) {
+            used -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    @SneakyThrows
+    private void store(String key, Entry e, byte[] body) {
+        var hash = sha256(body);
+        var f = objects.resolve(hash);
+        if (!Files.exists(f)) write(f, body);
+        e = new Entry(e.url, e.status, e.headers, hash, e.stored, e.maxAge, e.noCache, e.etag, e.modified);
+        remember(hash, body);
+        save(key, e);
+    }
+
+    @SneakyThrows
+    private void save(String key, Entry e) {
+        synchronized (this) {
+            entries.put(key, e);
+            while (entries.size() > 4096) {
+                var it = entries.entrySet().iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        var p = new Properties();
+        p.setProperty("url", e.url);
+        p.setProperty("status", String.valueOf(e.status));
+        p.setProperty("hash", e.hash);
+        p.setProperty("stored", String.valueOf(e.stored));
+        p.setProperty("maxAge", String.valueOf(e.maxAge));
+        p.setProperty("noCache", String.valueOf(e.noCache));
+        if (e.etag != null) p.setProperty("etag", e.etag);
+        if (e.modified != null) p.setProperty("modified", e.modified);
+        e.headers.forEach((k, v) -> p.setProperty("header." + k, v));
+        var tmp = Files.createTempFile(index, key, ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            p.store(w, null);
+        }
+        Files.move(tmp, index.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private @Nullable Entry load(String key) {
+        var f = index.resolve(key);
+        if (!Files.exists(f)) return null;
+        var p = new Properties();
+        try (Reader r = Files.newBufferedReader(f, StandardCharsets.UTF_8)) {
+            p.load(r);
+        } catch (IOException ex) {
+            log.debug("read cache index {}", f, ex);
+            return null;
+        }
+        var headers = new LinkedHashMap<String, String>();
+        for (var k : p.stringPropertyNames()) {
+            if (k.startsWith("header.")) headers.put(k.substring(7), p.getProperty(k));
+        }
+        return new Entry(p.getProperty("url"),
+                Integer.parseInt(p.getProperty("status")),
+                headers,
+                p.getProperty("hash"),
+                Long.parseLong(p.getProperty("stored")),
+                Long.parseLong(p.getProperty("maxAge")),
+                Boolean.parseBoolean(p.getProperty("noCache")),
+                p.getProperty("etag"),
+                p.getProperty("modified"));
+    }
+
+    private void write(Path f, byte[] body) throws IOException {
+        var tmp = Files.createTempFile(objects, f.getFileName().toString(), ".tmp");
+        Files.write(tmp, body);
+        Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @SneakyThrows
+    static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+    //endregion
+
+    @Override
+    public synchronized void begin(Context ctx, String name) {
+        skipped.clear();
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        if (log.isDebugEnabled()) log.debug("case {} {}", name, this);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache[memoryHits=" + memoryHits.sum() + ", diskHits=" + diskHits.sum() + ", revalidated=" + revalidated.sum()
+                + ", misses=" + misses.sum() + ", bypassed=" + bypassed.sum() + ", servedBytes=" + bytes.sum() + ", memoryBytes=" + used + "]";
+    }
+}
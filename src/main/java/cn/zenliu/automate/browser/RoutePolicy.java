@@ -0,0 +1,177 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Route;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Declarative request routing for pages: block, stub with an empty response or rewrite to a local file.<br/>
+ * Rules match by url glob and/or resource type, first matched rule wins, unmatched requests fall back to
+ * routes registered earlier (such as HAR) or the network.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-08
+ */
+public final class RoutePolicy implements Context.CaseListener {
+    public enum Kind {
+        BLOCK, STUB, FILE;
+
+        public static Kind of(String v) {
+            try {
+                return valueOf(v.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("invalid route rule '" + v + "', expect one of block, stub or file");
+            }
+        }
+    }
+
+    /**
+     * @param glob        url glob, null for any
+     * @param types       resource types, such as image, font, stylesheet, script, media; empty for any
+     * @param file        local file for {@link Kind#FILE}
+     * @param contentType content type of stub or file response
+     */
+    public record Rule(
+            @Nullable String glob,
+            @Nullable Pattern url,
+            Set<String> types,
+            Kind kind,
+            @Nullable Path file,
+            int status,
+            @Nullable String contentType,
+            LongAdder hits,
+            LongAdder bytes
+    ) {
+        public Rule(@Nullable String glob, Set<String> types, Kind kind, @Nullable Path file, int status, @Nullable String contentType) {
+            this(glob, glob == null ? null : RoutePolicy.glob(glob), types, kind, file, status, contentType, new LongAdder(), new LongAdder());
+            if (glob == null && types.isEmpty()) throw new IllegalArgumentException("route rule requires url or type");
+            if (kind == Kind.FILE && file == null) throw new IllegalArgumentException("route rule of file requires file");
+        }
+
+        boolean matches(String url, String type) {
+            return (this.url == null || this.url.matcher(url).matches()) && (types.isEmpty() || types.contains(type));
+        }
+
+        @Override
+        public String toString() {
+            return kind.name().toLowerCase() + (glob == null ? "" : " " + glob) + (types.isEmpty() ? "" : " " + types) + " hits=" + hits.sum();
+        }
+    }
+
+    private final Logger log;
+    private final String name;
+    private final List<Rule> rules;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+
+    public RoutePolicy(Logger log, String name, List<Rule> rules) {
+        if (rules.isEmpty()) throw new IllegalArgumentException("route policy " + name + " without rules");
+        this.log = log;
+        this.name = name;
+        this.rules = rules;
+    }
+
+    /**
+     * register the policy on a page.
+     */
+    public void apply(Page p) {
+        if (log.isTraceEnabled()) log.trace("apply route policy {} on {}", name, p);
+        p.route("**/*", this::handle);
+    }
+
+    @SneakyThrows
+    private void handle(Route route) {
+        requests.increment();
+        var req = route.request();
+        var url = req.url();
+        var type = req.resourceType();
+        for (var r : rules) {
+            if (!r.matches(url, type)) continue;
+            r.hits.increment();
+            switch (r.kind) {
+                case BLOCK -> route.abort("blockedbyclient");
+                case STUB -> route.fulfill(new Route.FulfillOptions()
+                        .setStatus(r.status)
+                        .setContentType(r.contentType == null ? "text/plain" : r.contentType)
+                        .setBody(""));
+                case FILE -> {
+                    var body = Files.readAllBytes(r.file);
+                    r.bytes.add(body.length);
+                    var opt = new Route.FulfillOptions().setStatus(r.status).setBodyBytes(body);
+                    if (r.contentType != null) opt.setContentType(r.contentType);
+                    route.fulfill(opt);
+                }
+            }
+            return;
+        }
+        passed.increment();
+        route.fallback();
+    }
+
+    /**
+     * convert a playwright style url glob: '**' any characters, '*' any except '/', '?' any one character,
+     * '{a,b}' alternatives.
+     */
+    public static Pattern glob(String glob) {
+        var b = new StringBuilder();
+        var group = false;
+        for (int i = 0; i < glob.length(); i++) {
+            var c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        b.append(".*");
+                        i++;
+                    } else b.append("[^/]*");
+                }
+                case '?' -> b.append('.');
+                case '{' -> {
+                    group = true;
+                    b.append("(?:");
+                }
+                case '}' -> {
+                    group = false;
+                    b.append(')');
+                }
+                case ',' -> b.append(group ? "|" : ",");
+                default -> {
+                    if ("\\.[]()+^$|".indexOf(c) >= 0) b.append('\\');
+                    b.append(c);
+                }
+            }
+        }
+        return Pattern.compile(b.toString());
+    }
+
+    @Override
+    public void begin(Context ctx, String name) {
+        requests.reset();
+        passed.reset();
+        for (var r : rules) {
+            r.hits.reset();
+            r.bytes.reset();
+        }
+    }
+
+    @Override
+    public void end(Context ctx, String name) {
+        if (requests.sum() > 0) log.info("case {} {}", name, this);
+    }
+
+    @Override
+    public String toString() {
+        var handled = requests.sum() - passed.sum();
+        var local = rules.stream().mapToLong(r -> r.bytes.sum()).sum();
+        return "RoutePolicy[" + name + ", requests=" + requests.sum() + ", handled=" + handled + ", localBytes=" + local + ", rules=" + rules + "]";
+    }
+}
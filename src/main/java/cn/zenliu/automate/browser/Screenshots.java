@@ -0,0 +1,159 @@
+package cn.zenliu.automate.browser;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Background screenshot pipeline.<br/>
+ * Case threads only hand captured bytes to a bounded queue, a single writer scales, encodes and writes them.
+ * A frame identical to the previous frame of the same source is skipped.
+ * When the queue is full, frames are dropped or the case thread waits, by policy.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-14
+ */
+public final class Screenshots implements AutoCloseable {
+    record Frame(Path file, byte[] data, @Nullable String format, double scale) {
+    }
+
+    private static final Frame END = new Frame(Path.of(""), new byte[0], null, 1);
+    private final Logger log;
+    private final BlockingQueue<Frame> queue;
+    private final boolean block;
+    private final Map<String, Long> last = new HashMap<>();
+    private final Future<?> writer;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder duplicated = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param capacity max pending frames
+     * @param block    wait for space when full, else drop the frame
+     */
+    public Screenshots(Logger log, int capacity, boolean block, ExecutorService executor) {
+        if (capacity <= 0) throw new IllegalArgumentException("screenshot queue capacity must be positive");
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.block = block;
+        this.writer = executor.submit(this::write);
+    }
+
+    /**
+     * @return next frame sequence number
+     */
+    public long next() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * @param source identity of frame source such as page name, used to skip identical consecutive frames
+     * @param format image format to re-encode in background, null to write captured bytes as is
+     * @param scale  scale of image when re-encode
+     * @return false if frame skipped or dropped
+     */
+    public boolean offer(String source, Path file, byte[] data, @Nullable String format, double scale) throws InterruptedException {
+        if (closed) throw new IllegalStateException("screenshot pipeline closed");
+        var crc = new CRC32C();
+        crc.update(data);
+        var h = crc.getValue() ^ ((long) data.length << 32);
+        synchronized (last) {
+            var p = last.put(source, h);
+            if (p != null && p == h) {
+                duplicated.increment();
+                return false;
+            }
+        }
+        var f = new Frame(file, data, format, scale);
+        if (block) {
+            queue.put(f);
+            return true;
+        }
+        if (queue.offer(f)) return true;
+        dropped.increment();
+        if (log.isDebugEnabled()) log.debug("drop screenshot {}, queue full", file);
+        return false;
+    }
+
+    private void write() {
+        while (true) {
+            Frame f;
+            try {
+                f = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (f == END) return;
+            try {
+                if (f.file.getParent() != null) Files.createDirectories(f.file.getParent());
+                if (f.format == null) {
+                    Files.write(f.file, f.data);
+                } else {
+                    var img = ImageIO.read(new ByteArrayInputStream(f.data));
+                    var s = f.scale > 0 ? f.scale : 1;
+                    if (s != 1 || (img.getColorModel().hasAlpha() && !f.format.equalsIgnoreCase("png")))
+                        img = scale(img, s, f.format);
+                    if (!ImageIO.write(img, f.format, f.file.toFile()))
+                        throw new IllegalStateException("no image writer of " + f.format);
+                }
+                written.increment();
+            } catch (Exception ex) {
+                failed.increment();
+                log.warn("write screenshot {}", f.file, ex);
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage src, double scale, String format) {
+        var w = Math.max(1, (int) (src.getWidth() * scale));
+        var h = Math.max(1, (int) (src.getHeight() * scale));
+        // jpeg writer rejects alpha channel
+        var dst = new BufferedImage(w, h, format.equalsIgnoreCase("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var g = dst.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+
+    /**
+     * write pending frames then stop.
+     */
+    @Override
+    public void close() throws Exception {
+        if (closed) return;
+        closed = true;
+        queue.put(END);
+        try {
+            writer.get(1, TimeUnit.MINUTES);
+        } catch (TimeoutException ex) {
+            writer.cancel(true);
+            log.warn("screenshot pipeline not finished in time, {} frames lost", queue.size());
+        }
+        if (log.isDebugEnabled()) log.debug("{}", this);
+    }
+
+    @Override
+    public String toString() {
+        return "Screenshots[pending=" + queue.size() + ", written=" + written.sum() + ", duplicated=" + duplicated.sum()
+                + ", dropped=" + dropped.sum() + ", failed=" + failed.sum() + "]";
+    }
+}
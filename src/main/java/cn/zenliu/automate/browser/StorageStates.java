@@ -0,0 +1,110 @@
+package cn.zenliu.automate.browser;
+
+import com.microsoft.playwright.BrowserContext;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Disk cache of browser storage states (cookies and local storage), so contexts can start already logged in.<br/>
+ * Each state is written as {@code <dir>/<key>.json} with its fingerprint in {@code <dir>/<key>.fp}.
+ * A state is fresh while younger than the time to live and its fingerprint equals the expected one,
+ * the fingerprint identifies the conf which produced the state, such as the login actions.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-17
+ */
+public final class StorageStates {
+    private final Logger log;
+    private final Path dir;
+    private final Duration ttl;
+    private final Map<String, Path> current = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+
+    /**
+     * @param ttl max age of a saved state
+     */
+    public StorageStates(Logger log, Path dir, Duration ttl) {
+        this.log = log;
+        this.dir = dir;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return hex sha-256 of value, empty for null
+     */
+    @SneakyThrows
+    public static String fingerprint(@Nullable String value) {
+        if (value == null) return "";
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path file(String key, String ext) {
+        return dir.resolve(key.replaceAll("[\\\\/:*?\"<>|\\s]", "_") + ext);
+    }
+
+    /**
+     * @param fingerprint expected fingerprint
+     * @return file of state if fresh, which becomes the current state of key
+     */
+    @SneakyThrows
+    public @Nullable Path fresh(String key, String fingerprint) {
+        var f = file(key, ".json");
+        var fp = file(key, ".fp");
+        String reason = null;
+        if (!Files.exists(f) || !Files.exists(fp)) reason = "missing";
+        else if (Files.getLastModifiedTime(f).toMillis() + ttl.toMillis() < System.currentTimeMillis()) reason = "expired";
+        else if (!Files.readString(fp).equals(fingerprint)) reason = "fingerprint changed";
+        if (reason != null) {
+            misses.increment();
+            current.remove(key);
+            if (log.isDebugEnabled()) log.debug("storage state {} {}", key, reason);
+            return null;
+        }
+        hits.increment();
+        current.put(key, f);
+        return f;
+    }
+
+    /**
+     * write storage state of context, which becomes the current state of key.
+     */
+    @SneakyThrows
+    public Path save(BrowserContext cx, String key, String fingerprint) {
+        Files.createDirectories(dir);
+        var f = file(key, ".json");
+        var tmp = file(key, ".json.tmp");
+        cx.storageState(new BrowserContext.StorageStateOptions().setPath(tmp));
+        Files.writeString(file(key, ".fp"), fingerprint);
+        Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saves.increment();
+        current.put(key, f);
+        if (log.isDebugEnabled()) log.debug("storage state {} saved to {}", key, f);
+        return f;
+    }
+
+    /**
+     * @return state file last loaded or saved of key, null if none
+     */
+    public @Nullable Path current(String key) {
+        return current.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return "StorageStates[" + dir + ", ttl=" + ttl + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", saves=" + saves.sum() + "]";
+    }
+}
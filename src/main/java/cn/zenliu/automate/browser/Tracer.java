@@ -0,0 +1,139 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.BrowserContext;
+import com.microsoft.playwright.Tracing;
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Playwright tracing of a browser context, written in chunks so a long run never holds one huge trace.<br/>
+ * In per case mode each case is one chunk written as {@code <dir>/<case>.zip}.
+ * Time spent in tracing calls and size of chunks are reported with the time traced, that is the time of traced cases
+ * in per case mode or the time from start to stop otherwise. Only the cost of the calls is measured, not the slowdown
+ * of pages while recording.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-16
+ */
+public final class Tracer implements Context.CaseListener, AutoCloseable {
+    private final Logger log;
+    private final BrowserContext context;
+    private final Path dir;
+    private final boolean perCase;
+    private boolean recording;
+    /**
+     * begin of the time being traced, by start or by the case.
+     */
+    private long caseBegin;
+    private long spent;
+    private long bytes;
+    private long chunks;
+    private long traced;
+    private boolean stopped;
+
+    public Tracer(Logger log, BrowserContext context, Path dir, boolean perCase) {
+        this.log = log;
+        this.context = context;
+        this.dir = dir;
+        this.perCase = perCase;
+    }
+
+    /**
+     * start tracing with the first chunk recording.
+     */
+    public synchronized void start(Tracing.StartOptions opt) {
+        var t = System.nanoTime();
+        context.tracing().start(opt);
+        recording = true;
+        spent += System.nanoTime() - t;
+        caseBegin = System.nanoTime();
+    }
+
+    /**
+     * write current chunk and start next one.
+     */
+    public synchronized void chunk(Path file, @Nullable String title) {
+        stopChunk(file);
+        var t = System.nanoTime();
+        context.tracing().startChunk(new Tracing.StartChunkOptions().setTitle(title));
+        recording = true;
+        spent += System.nanoTime() - t;
+    }
+
+    @SneakyThrows
+    private void stopChunk(Path file) {
+        if (!recording) return;
+        var t = System.nanoTime();
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            context.tracing().stopChunk(new Tracing.StopChunkOptions().setPath(file));
+            recording = false;
+            chunks++;
+            var size = Files.exists(file) ? Files.size(file) : 0;
+            bytes += size;
+            var ms = (System.nanoTime() - t) / 1_000_000;
+            if (log.isDebugEnabled()) log.debug("trace chunk {} written {} bytes in {}ms", file, size, ms);
+        } finally {
+            spent += System.nanoTime() - t;
+        }
+    }
+
+    /**
+     * stop tracing.
+     *
+     * @param file write remaining chunk, null to discard
+     */
+    @SneakyThrows
+    public synchronized void stop(@Nullable Path file) {
+        if (stopped) return;
+        stopped = true;
+        var t = System.nanoTime();
+        try {
+            if (file != null && file.getParent() != null) Files.createDirectories(file.getParent());
+            if (!perCase && recording) traced += t - caseBegin;
+            context.tracing().stop(new Tracing.StopOptions().setPath(recording ? file : null));
+            if (file != null && recording) chunks++;
+        } finally {
+            recording = false;
+            spent += System.nanoTime() - t;
+        }
+        log.info("{}", this);
+    }
+
+    @Override
+    public synchronized void begin(Context ctx, String name) {
+        if (!perCase || stopped) return;
+        var t = System.nanoTime();
+        context.tracing().startChunk(new Tracing.StartChunkOptions().setTitle(name));
+        recording = true;
+        spent += System.nanoTime() - t;
+        caseBegin = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void end(Context ctx, String name) {
+        if (!perCase || stopped || !recording) return;
+        traced += System.nanoTime() - caseBegin;
+        stopChunk(dir.resolve(name.replaceAll("[\\\\/:*?\"<>|\\s]", "_") + ".zip"));
+    }
+
+    @Override
+    public void close() {
+        try {
+            stop(null);
+        } catch (Exception ex) {
+            log.debug("stop tracing", ex);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Tracer[chunks=%d, bytes=%d, calls=%.1fms, traced=%.1fms, calls of traced=%.1f%%]",
+                chunks, bytes, spent / 1e6, traced / 1e6, traced == 0 ? 0 : spent * 100.0 / traced);
+    }
+}
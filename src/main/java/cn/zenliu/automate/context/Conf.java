@@ -414,7 +414,7 @@ public interface Conf extends Config {
         var c = o.toConfig();
         Conf cf = () -> c;
         for (String k : o.keySet()) {
-            m.put(k, cf.rString(k));
+            m.put(k, cf.rString(ConfigUtil.joinPath(k)));
         }
         return m;
     }
@@ -439,6 +439,21 @@ public interface Conf extends Config {
         return maybe(path, Config::getObjectList).map(s -> s.stream().map(c -> Conf.of(c.toConfig())).toList());
     }
 
+    /**
+     * read a list of object lists, such as {@code [[{...},{...}],[{...}]]}
+     */
+    default Optional<List<List<Conf>>> objectLists(String path) {
+        return maybe(path, Config::getList).map(l -> l.stream().map(v -> {
+            if (!(v instanceof ConfigList x))
+                throw new IllegalArgumentException("list of object list required at '" + path + "'");
+            return x.stream().map(o -> {
+                if (!(o instanceof ConfigObject y))
+                    throw new IllegalArgumentException("list of object list required at '" + path + "'");
+                return Conf.of(y.toConfig());
+            }).toList();
+        }).toList());
+    }
+
     static <T> Reader<T> required(String path, BiFunction<Conf, String, T> fn) {
         return c -> {
             if (c.hasPath(path)) return fn.apply(c, path);
@@ -522,7 +537,21 @@ public interface Conf extends Config {
         }, null);
     }
 
+    static Reader<List<String>> stringLists(String path, boolean req) {
+        return req
+                ? required(path, (c, p) -> {
+            var v = c.getStringList(p);
+            return v == null || v.isEmpty() ? null : List.copyOf(v);
+        })
+                : maybe(path, (c, p) -> {
+            var v = c.getStringList(p);
+            return v == null || v.isEmpty() ? null : List.copyOf(v);
+        }, null);
+    }
+
     ConfReader<Map<String, String>> MaybeStringMap = (c, p) -> stringMap(p, false).apply(c);
+    ConfReader<Map<String, String>> RequireStringMap = (c, p) -> stringMap(p, true).apply(c);
     ConfReader<Set<Integer>> MaybeSetInt = (c, p) -> intSets(p, false).apply(c);
     ConfReader<Set<String>> MaybeSetString = (c, p) -> stringSets(p, false).apply(c);
+    ConfReader<List<String>> MaybeListString = (c, p) -> stringLists(p, false).apply(c);
 }
@@ -1,10 +1,12 @@
 package cn.zenliu.automate.context;
 
 import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.action.Program;
 import com.microsoft.playwright.Browser;
 import com.microsoft.playwright.Playwright;
 import com.typesafe.config.ConfigFactory;
 import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.io.File;
@@ -13,12 +15,21 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author Zen.Liu
  * @since 2024-11-23
  */
 public interface Context extends AutoCloseable {
+    /**
+     * variable name of current executing case name.
+     */
+    String CASE = "Case";
 
     Logger log();
 
@@ -26,6 +37,11 @@ public interface Context extends AutoCloseable {
 
     ConcurrentLinkedQueue<AutoCloseable> closableQueue();
 
+    /**
+     * executor for asynchronous actions, threads are daemon.
+     */
+    ExecutorService executor();
+
     @Override
     default void close() throws Exception {
         var q = closableQueue();
@@ -41,21 +57,112 @@ public interface Context extends AutoCloseable {
 
             c = q.poll();
         }
+        executor().shutdownNow();
+    }
+
+    static ExecutorService newExecutor() {
+        var n = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            var t = new Thread(r, "automate-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     Map<String, Object> vars();
 
     /**
-     * put a context variable
+     * a variable confined to threads, released when a forked thread finishes its work.
+     */
+    interface ThreadBound {
+        /**
+         * release resources bound to current thread.
+         */
+        void release();
+    }
+
+    /**
+     * a variable notified when each case begins and ends.
+     */
+    interface CaseListener {
+        /**
+         * listeners begin in ascending order and end in descending order.
+         */
+        default int order() {
+            return 0;
+        }
+
+        void begin(Context ctx, String name);
+
+        void end(Context ctx, String name);
+    }
+
+    /**
+     * a variable named {@value #NAME} keeping recent execution records in memory,
+     * written out only when an action fails.
+     */
+    interface Recorder {
+        String NAME = "Recorder";
+
+        /**
+         * record an executed instruction of a program.
+         *
+         * @param nanos elapsed time
+         * @param error failure of action or null
+         */
+        void record(Context ctx, String program, Action act, long nanos, @Nullable Exception error);
+
+        /**
+         * write out records of a failure which left a case or a top level action unhandled.
+         * a cause already written is ignored.
+         */
+        void flush(Context ctx, String action, Exception cause);
+    }
+
+    default @Nullable Recorder recorder() {
+        return vars().get(Recorder.NAME) instanceof Recorder r ? r : null;
+    }
+
+    /**
+     * flush records of an unhandled failure if a {@link Recorder} exists.
+     */
+    default void flush(String action, Exception cause) {
+        var rec = recorder();
+        if (rec == null) return;
+        try {
+            rec.flush(this, action, cause);
+        } catch (Exception e) {
+            log().error("flush records of {}", action, e);
+        }
+    }
+
+    default List<CaseListener> caseListeners() {
+        var l = new ArrayList<CaseListener>();
+        for (var v : vars().values()) {
+            if (v instanceof CaseListener c) l.add(c);
+        }
+        l.sort(Comparator.comparingInt(CaseListener::order));
+        return l;
+    }
+
+    /**
+     * release all {@link ThreadBound} variables for current thread.
+     */
+    default void releaseThread() {
+        for (var v : vars().values()) {
+            if (v instanceof ThreadBound b) b.release();
+        }
+    }
+
+    /**
+     * put a context variable, atomic for concurrent writers.
      *
      * @param name  the name
      * @param value the value
      * @return success (false if already exists)
      */
     default boolean put(String name, Object value) {
-        var m = vars();
-        if (m.containsKey(name)) return false;
-        m.put(name, value);
+        if (vars().putIfAbsent(name, value) != null) return false;
         if (value instanceof AutoCloseable a) {
             closable().put(name, a);
             closableQueue().add(a);
@@ -64,24 +171,74 @@ public interface Context extends AutoCloseable {
     }
 
     /**
-     * remove variable, if variable value is an AutoCloseable also close it.
+     * put a context variable with a closer which is called instead of closing the value, atomic for concurrent writers.
+     *
+     * @param name   the name
+     * @param value  the value
+     * @param closer called when the variable is invalidated or the context closed
+     * @return success (false if already exists)
+     */
+    default boolean put(String name, Object value, AutoCloseable closer) {
+        if (vars().putIfAbsent(name, value) != null) return false;
+        closable().put(name, closer);
+        closableQueue().add(closer);
+        return true;
+    }
+
+    /**
+     * fetch a context variable, or create and put it when missing, atomic for concurrent callers:
+     * only the caller which puts the variable creates the value.
+     *
+     * @param name   the name
+     * @param type   the class
+     * @param create create the value, must not change other variables
+     * @param closer closer of created value, called when the variable is invalidated or the context closed.
+     *               null to close the value if it is an AutoCloseable
+     * @return existing or created value
+     */
+    default <T> T computeIfAbsent(String name, Class<T> type, Supplier<T> create, @Nullable Function<T, AutoCloseable> closer) {
+        var created = new ArrayList<T>(1);
+        var v = vars().computeIfAbsent(name, k -> {
+            var x = Objects.requireNonNull(create.get(), () -> "create " + name);
+            created.add(x);
+            return x;
+        });
+        if (!created.isEmpty()) {
+            var c = closer != null ? closer.apply(created.get(0)) : v instanceof AutoCloseable a ? a : null;
+            if (c != null) {
+                closable().put(name, c);
+                closableQueue().add(c);
+            }
+        }
+        if (!type.isInstance(v)) throw new IllegalStateException(name + " exists but not a " + type);
+        return type.cast(v);
+    }
+
+    /**
+     * @see #computeIfAbsent(String, Class, Supplier, Function)
+     */
+    default <T> T computeIfAbsent(String name, Class<T> type, Supplier<T> create) {
+        return computeIfAbsent(name, type, create, null);
+    }
+
+    /**
+     * remove variable, if variable registered with a closer or value is an AutoCloseable also close it.
      *
      * @param name the variable name
      * @return true if success
      */
     @SneakyThrows
     default boolean invalidate(String name) {
-        var m = vars();
-        if (m.containsKey(name)) {
-            var v = m.remove(name);
-            if (v instanceof AutoCloseable a) {
-                closable().remove(name);
-                closableQueue().removeIf(x -> x == a);
-                a.close();
-            }
-            return true;
+        var v = vars().remove(name);
+        if (v == null) return false;
+        var c = closable().remove(name);
+        if (c == null && v instanceof AutoCloseable a) c = a;
+        if (c != null) {
+            var a = c;
+            closableQueue().removeIf(x -> x == a);
+            a.close();
         }
-        return false;
+        return true;
     }
 
     /**
@@ -128,10 +285,11 @@ public interface Context extends AutoCloseable {
             Logger log,
             Map<String, AutoCloseable> closable,
             ConcurrentLinkedQueue<AutoCloseable> closableQueue,
-            Map<String, Object> vars
+            Map<String, Object> vars,
+            ExecutorService executor
     ) implements Context {
         context(Logger log) {
-            this(log, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>());
+            this(log, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>(), Context.newExecutor());
         }
 
         record ActionIter(
@@ -172,16 +330,19 @@ public interface Context extends AutoCloseable {
             var actions = f.objects("actions").orElseThrow(() -> new IllegalArgumentException("missing required actions"));
             if (actions.isEmpty()) throw new IllegalArgumentException("actions should not be empty");
             actions.forEach(c -> action.add(Action.parseConf(c)));
-            return new Case(f.integer("order").orElse(0), f.bool("cleanup").orElse(false), file, name, action, vars);
+            return new Case(f.integer("order").orElse(0), f.bool("cleanup").orElse(false), f.bool("profile").orElse(false),
+                    file, name, action, vars, Program.compile(name, action));
         }
 
         record Case(
                 int order,
                 boolean cleanup,
+                boolean profile,
                 String file,
                 String name,
                 List<Action> actions,
-                Map<String, Object> vars
+                Map<String, Object> vars,
+                Program program
         ) implements Action {
 
             @Override
@@ -202,26 +363,32 @@ public interface Context extends AutoCloseable {
                     allKeys = null;
                 }
                 ctx.vars().putAll(vars);
-                Set<String> keys = null;
+                ctx.vars().put(CASE, name);
+                var listeners = ctx.caseListeners();
                 try {
-                    for (var act : actions) {
-                        if (trace) {
-                            log.trace("will execute action {}.{}", name, act.action());
-                            keys = new HashSet<>(ctx.vars().keySet());
-                        }
-                        act.execute(ctx, log);
-                        if (trace) {
-                            var fk = keys;
-                            ctx.vars().forEach((k, v) -> {
-                                if (!fk.contains(k)) log.trace("{}.{} write {} : {}", name, act.action(), k, v);
-                            });
-                            log.trace("{}.{} done", name, act.action());
+                    for (var l : listeners) l.begin(ctx, name);
+                    program.run(ctx, log, profile);
+                } catch (Exception ex) {
+                    // before listeners end the case, while its pages are still open
+                    ctx.flush(name, ex);
+                    throw ex;
+                } finally {
+                    // listeners registered during the case also end it
+                    listeners = ctx.caseListeners();
+                    for (int i = listeners.size() - 1; i >= 0; i--) {
+                        try {
+                            listeners.get(i).end(ctx, name);
+                        } catch (Exception ex) {
+                            log.error("end case {} of {}", name, listeners.get(i), ex);
                         }
                     }
-                } finally {
+                    ctx.vars().remove(CASE);
                     if (trace) {
                         log.trace("case {} done", name);
                     }
+                    if (profile) {
+                        log.info("{}", program.profile());
+                    }
                     if (cleanup) {
                         var to = new HashSet<String>();
                         ctx.vars().keySet().forEach(v -> {
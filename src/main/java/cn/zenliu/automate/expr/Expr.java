@@ -0,0 +1,472 @@
+package cn.zenliu.automate.expr;
+
+import cn.zenliu.automate.context.Context;
+import cn.zenliu.automate.notation.ConfReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled expression over context variables.<br/>
+ * Parsed once when a case is loaded, evaluated without parsing or regex compilation.<br/>
+ * Syntax:
+ * <ul>
+ *     <li>literals: {@code 'text'}, {@code "text"}, {@code 12}, {@code 1.5}, {@code true}, {@code false}, {@code null}</li>
+ *     <li>variables: bare names such as {@code url} or {@code user.name}, or {@code var('Page::main')} for any name</li>
+ *     <li>operators by precedence: {@code ! -}, {@code * / %}, {@code + -}, {@code < <= > >=}, {@code == != =~}, {@code &&}, {@code ||}</li>
+ *     <li>functions: {@link #FUNCTIONS}</li>
+ * </ul>
+ * {@code =~} is a full regex match. A literal pattern, on the right side of {@code =~} or as the second argument of
+ * {@code matches} and {@code find}, is compiled at parse time and bound into the expression.<br/>
+ * Strings decode {@code \n \t \r \\} and the escaped quote, other escapes are kept as written.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-03
+ */
+public interface Expr extends Predicate<Context> {
+    Object eval(Context ctx);
+
+    @Override
+    default boolean test(Context ctx) {
+        return truthy(eval(ctx));
+    }
+
+    static Expr parse(String source) {
+        return new parser(source).parse();
+    }
+
+    ConfReader<Expr> Maybe = (c, p) -> c.string(p).map(Expr::parse).orElse(null);
+    ConfReader<Expr> Require = (c, p) -> parse(c.rString(p));
+
+    ConfReader<Pattern> MaybePattern = (c, p) -> c.string(p).map(Pattern::compile).orElse(null);
+
+    /**
+     * max patterns kept by {@link #PATTERNS}.
+     */
+    int PATTERN_CACHE = 256;
+    /**
+     * compiled regex by source, least recently used dropped when full.
+     */
+    Map<String, Pattern> PATTERNS = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > PATTERN_CACHE;
+        }
+    });
+
+    /**
+     * shared compiled regex cache, for patterns only known at runtime.
+     */
+    static Pattern pattern(String regex) {
+        return PATTERNS.computeIfAbsent(regex, Pattern::compile);
+    }
+
+    static boolean truthy(Object v) {
+        if (v == null) return false;
+        if (v instanceof Boolean b) return b;
+        if (v instanceof Number n) return n.doubleValue() != 0;
+        if (v instanceof CharSequence s) return !s.isEmpty();
+        if (v instanceof Collection<?> c) return !c.isEmpty();
+        if (v instanceof Map<?, ?> m) return !m.isEmpty();
+        return true;
+    }
+
+    static String text(Object v) {
+        return v == null ? null : v.toString();
+    }
+
+    static Object number(Object v) {
+        if (v == null || v instanceof Number) return v;
+        var s = v.toString().trim();
+        try {
+            return s.contains(".") || s.contains("e") || s.contains("E") ? Double.parseDouble(s) : Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    static int compare(Object l, Object r) {
+        if (l == null || r == null) throw new IllegalStateException("compare with null: " + l + ", " + r);
+        if (l instanceof Number || r instanceof Number) {
+            var a = number(l);
+            var b = number(r);
+            if (a instanceof Number x && b instanceof Number y) {
+                if (isIntegral(x) && isIntegral(y)) return Long.compare(x.longValue(), y.longValue());
+                return Double.compare(x.doubleValue(), y.doubleValue());
+            }
+        }
+        return l.toString().compareTo(r.toString());
+    }
+
+    static boolean equal(Object l, Object r) {
+        if (l == null || r == null) return l == r;
+        if (l instanceof Number || r instanceof Number) {
+            var a = number(l);
+            var b = number(r);
+            return a != null && b != null && compare(a, b) == 0;
+        }
+        if (l instanceof Boolean || r instanceof Boolean) return l.toString().equals(r.toString());
+        return Objects.equals(l, r);
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    //region Nodes
+    record Const(Object value) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            return value;
+        }
+    }
+
+    record Var(String name) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            return ctx.vars().get(name);
+        }
+    }
+
+    record Not(Expr v) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            return !v.test(ctx);
+        }
+    }
+
+    record And(Expr l, Expr r) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            return l.test(ctx) && r.test(ctx);
+        }
+    }
+
+    record Or(Expr l, Expr r) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            return l.test(ctx) || r.test(ctx);
+        }
+    }
+
+    record Compare(String op, Expr l, Expr r) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var a = l.eval(ctx);
+            var b = r.eval(ctx);
+            return switch (op) {
+                case "==" -> equal(a, b);
+                case "!=" -> !equal(a, b);
+                case "<" -> compare(a, b) < 0;
+                case "<=" -> compare(a, b) <= 0;
+                case ">" -> compare(a, b) > 0;
+                case ">=" -> compare(a, b) >= 0;
+                default -> throw new IllegalStateException("unknown operator " + op);
+            };
+        }
+    }
+
+    record Match(Expr v, Pattern pattern) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var s = text(v.eval(ctx));
+            return s != null && pattern.matcher(s).matches();
+        }
+    }
+
+    record Find(Expr v, Pattern pattern) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var s = text(v.eval(ctx));
+            return s != null && pattern.matcher(s).find();
+        }
+    }
+
+    record DynamicMatch(Expr v, Expr pattern) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var s = text(v.eval(ctx));
+            var p = text(pattern.eval(ctx));
+            return s != null && p != null && Expr.pattern(p).matcher(s).matches();
+        }
+    }
+
+    record Arith(char op, Expr l, Expr r) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var a = l.eval(ctx);
+            var b = r.eval(ctx);
+            if (op == '+' && (a instanceof CharSequence || b instanceof CharSequence))
+                return String.valueOf(a) + b;
+            if (!(number(a) instanceof Number x) || !(number(b) instanceof Number y))
+                throw new IllegalStateException("not numbers: " + a + " " + op + " " + b);
+            if (isIntegral(x) && isIntegral(y) && op != '/') {
+                return switch (op) {
+                    case '+' -> x.longValue() + y.longValue();
+                    case '-' -> x.longValue() - y.longValue();
+                    case '*' -> x.longValue() * y.longValue();
+                    default -> x.longValue() % y.longValue();
+                };
+            }
+            return switch (op) {
+                case '+' -> x.doubleValue() + y.doubleValue();
+                case '-' -> x.doubleValue() - y.doubleValue();
+                case '*' -> x.doubleValue() * y.doubleValue();
+                case '/' -> x.doubleValue() / y.doubleValue();
+                default -> x.doubleValue() % y.doubleValue();
+            };
+        }
+    }
+
+    record Call(String name, Builtin fn, Expr[] args) implements Expr {
+        @Override
+        public Object eval(Context ctx) {
+            var v = new Object[args.length];
+            for (int i = 0; i < args.length; i++) v[i] = args[i].eval(ctx);
+            return fn.apply(ctx, v);
+        }
+    }
+    //endregion
+
+    /**
+     * builtin function.
+     */
+    interface Builtin {
+        Object apply(Context ctx, Object[] args);
+    }
+
+    record Fn(int arity, Builtin fn) {
+    }
+
+    Map<String, Fn> FUNCTIONS = Map.ofEntries(
+            Map.entry("var", new Fn(1, (c, a) -> c.vars().get(text(a[0])))),
+            Map.entry("exists", new Fn(1, (c, a) -> c.vars().get(text(a[0])) != null)),
+            Map.entry("len", new Fn(1, (c, a) -> a[0] == null ? 0L
+                    : a[0] instanceof Collection<?> x ? (long) x.size()
+                    : a[0] instanceof Map<?, ?> x ? (long) x.size()
+                    : (long) a[0].toString().length())),
+            Map.entry("str", new Fn(1, (c, a) -> text(a[0]))),
+            Map.entry("num", new Fn(1, (c, a) -> number(a[0]))),
+            Map.entry("lower", new Fn(1, (c, a) -> a[0] == null ? null : a[0].toString().toLowerCase())),
+            Map.entry("upper", new Fn(1, (c, a) -> a[0] == null ? null : a[0].toString().toUpperCase())),
+            Map.entry("trim", new Fn(1, (c, a) -> a[0] == null ? null : a[0].toString().trim())),
+            Map.entry("contains", new Fn(2, (c, a) -> a[0] != null && a[1] != null && a[0].toString().contains(a[1].toString()))),
+            Map.entry("startsWith", new Fn(2, (c, a) -> a[0] != null && a[1] != null && a[0].toString().startsWith(a[1].toString()))),
+            Map.entry("endsWith", new Fn(2, (c, a) -> a[0] != null && a[1] != null && a[0].toString().endsWith(a[1].toString()))),
+            Map.entry("matches", new Fn(2, (c, a) -> a[0] != null && a[1] != null && pattern(a[1].toString()).matcher(a[0].toString()).matches())),
+            Map.entry("find", new Fn(2, (c, a) -> a[0] != null && a[1] != null && pattern(a[1].toString()).matcher(a[0].toString()).find()))
+    );
+
+    /**
+     * recursive descent parser, folds constant sub expressions.
+     */
+    final class parser {
+        private final String src;
+        private int pos;
+
+        parser(String src) {
+            this.src = Objects.requireNonNull(src, "expression required");
+        }
+
+        Expr parse() {
+            var e = or();
+            skip();
+            if (pos < src.length()) throw error("unexpected '" + src.charAt(pos) + "'");
+            return e;
+        }
+
+        private IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException("invalid expression '" + src + "' at " + pos + ": " + msg);
+        }
+
+        private void skip() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+        }
+
+        private boolean eat(String op) {
+            skip();
+            if (src.startsWith(op, pos)) {
+                pos += op.length();
+                return true;
+            }
+            return false;
+        }
+
+        private Expr or() {
+            var l = and();
+            while (eat("||")) l = fold(new Or(l, and()));
+            return l;
+        }
+
+        private Expr and() {
+            var l = equality();
+            while (eat("&&")) l = fold(new And(l, equality()));
+            return l;
+        }
+
+        private Expr equality() {
+            var l = relation();
+            while (true) {
+                if (eat("==")) l = fold(new Compare("==", l, relation()));
+                else if (eat("!=")) l = fold(new Compare("!=", l, relation()));
+                else if (eat("=~")) {
+                    var r = relation();
+                    l = r instanceof Const c && c.value() != null
+                            ? new Match(l, Pattern.compile(c.value().toString()))
+                            : new DynamicMatch(l, r);
+                } else return l;
+            }
+        }
+
+        private Expr relation() {
+            var l = additive();
+            while (true) {
+                if (eat("<=")) l = fold(new Compare("<=", l, additive()));
+                else if (eat(">=")) l = fold(new Compare(">=", l, additive()));
+                else if (eat("<")) l = fold(new Compare("<", l, additive()));
+                else if (eat(">")) l = fold(new Compare(">", l, additive()));
+                else return l;
+            }
+        }
+
+        private Expr additive() {
+            var l = multiplicative();
+            while (true) {
+                if (eat("+")) l = fold(new Arith('+', l, multiplicative()));
+                else if (eat("-")) l = fold(new Arith('-', l, multiplicative()));
+                else return l;
+            }
+        }
+
+        private Expr multiplicative() {
+            var l = unary();
+            while (true) {
+                if (eat("*")) l = fold(new Arith('*', l, unary()));
+                else if (eat("/")) l = fold(new Arith('/', l, unary()));
+                else if (eat("%")) l = fold(new Arith('%', l, unary()));
+                else return l;
+            }
+        }
+
+        private Expr unary() {
+            if (eat("!")) return fold(new Not(unary()));
+            if (eat("-")) return fold(new Arith('-', new Const(0L), unary()));
+            return primary();
+        }
+
+        private Expr primary() {
+            skip();
+            if (pos >= src.length()) throw error("unexpected end");
+            var c = src.charAt(pos);
+            if (c == '(') {
+                pos++;
+                var e = or();
+                if (!eat(")")) throw error("')' expected");
+                return e;
+            }
+            if (c == '\'' || c == '"') return new Const(string(c));
+            if (Character.isDigit(c)) return new Const(numeric());
+            if (Character.isLetter(c) || c == '_' || c == '$') {
+                var name = identifier();
+                switch (name) {
+                    case "true":
+                        return new Const(true);
+                    case "false":
+                        return new Const(false);
+                    case "null":
+                        return new Const(null);
+                }
+                if (eat("(")) return call(name);
+                return new Var(name);
+            }
+            throw error("unexpected '" + c + "'");
+        }
+
+        private Expr call(String name) {
+            var fn = FUNCTIONS.get(name);
+            if (fn == null) throw error("unknown function '" + name + "'");
+            var args = new ArrayList<Expr>();
+            if (!eat(")")) {
+                do args.add(or()); while (eat(","));
+                if (!eat(")")) throw error("')' expected");
+            }
+            if (args.size() != fn.arity())
+                throw error("function '" + name + "' requires " + fn.arity() + " arguments");
+            if (name.equals("var") && args.get(0) instanceof Const k && k.value() != null)
+                return new Var(k.value().toString());
+            if (name.equals("matches") && args.get(1) instanceof Const k && k.value() != null)
+                return new Match(args.get(0), Pattern.compile(k.value().toString()));
+            if (name.equals("find") && args.get(1) instanceof Const k && k.value() != null)
+                return new Find(args.get(0), Pattern.compile(k.value().toString()));
+            return new Call(name, fn.fn(), args.toArray(Expr[]::new));
+        }
+
+        private String identifier() {
+            var b = pos;
+            while (pos < src.length()) {
+                var c = src.charAt(pos);
+                if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.') pos++;
+                else break;
+            }
+            return src.substring(b, pos);
+        }
+
+        private Object numeric() {
+            var b = pos;
+            var real = false;
+            while (pos < src.length()) {
+                var c = src.charAt(pos);
+                if (Character.isDigit(c)) pos++;
+                else if (c == '.' && !real) {
+                    real = true;
+                    pos++;
+                } else break;
+            }
+            var s = src.substring(b, pos);
+            return real ? (Object) Double.parseDouble(s) : (Object) Long.parseLong(s);
+        }
+
+        private String string(char quote) {
+            pos++;
+            var b = new StringBuilder();
+            while (pos < src.length()) {
+                var c = src.charAt(pos++);
+                if (c == quote) return b.toString();
+                if (c == '\\' && pos < src.length()) {
+                    var n = src.charAt(pos++);
+                    // other escapes are kept as written, so regex literals such as '\d+' survive
+                    if (n == quote) b.append(n);
+                    else switch (n) {
+                        case 'n' -> b.append('\n');
+                        case 't' -> b.append('\t');
+                        case 'r' -> b.append('\r');
+                        case '\\' -> b.append('\\');
+                        default -> b.append('\\').append(n);
+                    }
+                } else b.append(c);
+            }
+            throw error("unterminated string");
+        }
+
+        private static Expr fold(Expr e) {
+            var constant = e instanceof Not n ? n.v() instanceof Const
+                    : e instanceof And a ? a.l() instanceof Const && a.r() instanceof Const
+                    : e instanceof Or o ? o.l() instanceof Const && o.r() instanceof Const
+                    : e instanceof Compare c ? c.l() instanceof Const && c.r() instanceof Const
+                    : e instanceof Arith a && a.l() instanceof Const && a.r() instanceof Const;
+            if (!constant) return e;
+            // a failing constant such as 'x % 0' fails where it is evaluated, which may never happen
+            try {
+                return new Const(e.eval(null));
+            } catch (RuntimeException ex) {
+                return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cn.zenliu.automate.expr;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled path into a JSON document.<br/>
+ * Syntax: optional root {@code $}, then members as {@code .name} or {@code ['name']}, and array items as {@code [0]},
+ * negative index counts from the end. For example {@code $.data.items[-1].id}.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-20
+ */
+public interface JsonPath {
+    /**
+     * @return selected element, null if any step is missing
+     */
+    @Nullable JsonElement select(JsonElement root);
+
+    static JsonPath parse(String source) {
+        var steps = new ArrayList<Object>();
+        var s = source.trim();
+        var i = s.startsWith("$") ? 1 : 0;
+        var n = s.length();
+        if (i == 0 && n > 0 && s.charAt(0) != '.' && s.charAt(0) != '[') s = "." + s;
+        n = s.length();
+        while (i < n) {
+            var c = s.charAt(i);
+            if (c == '.') {
+                var e = i + 1;
+                while (e < n && s.charAt(e) != '.' && s.charAt(e) != '[') e++;
+                if (e == i + 1) throw new IllegalArgumentException("empty member at " + i + " of json path '" + source + "'");
+                steps.add(s.substring(i + 1, e));
+                i = e;
+            } else if (c == '[') {
+                var b = i + 1;
+                while (b < n && s.charAt(b) == ' ') b++;
+                if (b < n && (s.charAt(b) == '\'' || s.charAt(b) == '"')) {
+                    // quoted member may contain ']', scan to the closing quote first
+                    var q = s.indexOf(s.charAt(b), b + 1);
+                    if (q < 0) throw new IllegalArgumentException("missing closing quote at " + b + " of json path '" + source + "'");
+                    var e = q + 1;
+                    while (e < n && s.charAt(e) == ' ') e++;
+                    if (e >= n || s.charAt(e) != ']') throw new IllegalArgumentException("missing ']' at " + e + " of json path '" + source + "'");
+                    steps.add(s.substring(b + 1, q));
+                    i = e + 1;
+                    continue;
+                }
+                var e = s.indexOf(']', i);
+                if (e < 0) throw new IllegalArgumentException("missing ']' at " + i + " of json path '" + source + "'");
+                var v = s.substring(i + 1, e).trim();
+                try {
+                    steps.add(Integer.parseInt(v));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("invalid index '" + v + "' of json path '" + source + "'");
+                }
+                i = e + 1;
+            } else throw new IllegalArgumentException("unexpected '" + c + "' at " + i + " of json path '" + source + "'");
+        }
+        return new path(source, List.copyOf(steps));
+    }
+
+    /**
+     * parse text and select.
+     */
+    static @Nullable JsonElement select(String json, String path) {
+        return parse(path).select(JsonParser.parseString(json));
+    }
+
+    /**
+     * @return java value of element: string, boolean, long, BigInteger beyond long or double for primitives,
+     * null for json null or missing, json text for objects and arrays
+     */
+    static @Nullable Object value(@Nullable JsonElement e) {
+        if (e == null || e.isJsonNull()) return null;
+        if (e.isJsonPrimitive()) {
+            var p = e.getAsJsonPrimitive();
+            if (p.isBoolean()) return p.getAsBoolean();
+            if (p.isString()) return p.getAsString();
+            // integral numbers as written, a double would round ids beyond 2^53
+            var t = p.getAsString();
+            if (t.indexOf('.') < 0 && t.indexOf('e') < 0 && t.indexOf('E') < 0) {
+                var i = p.getAsBigInteger();
+                return i.bitLength() < 64 ? (Object) i.longValue() : i;
+            }
+            return p.getAsDouble();
+        }
+        return e.toString();
+    }
+
+    record path(String source, List<Object> steps) implements JsonPath {
+        @Override
+        public @Nullable JsonElement select(JsonElement root) {
+            var e = root;
+            for (var s : steps) {
+                if (e == null || e instanceof JsonNull) return null;
+                if (s instanceof Integer i) {
+                    if (!e.isJsonArray()) return null;
+                    var a = e.getAsJsonArray();
+                    var x = i < 0 ? a.size() + i : i;
+                    e = x < 0 || x >= a.size() ? null : a.get(x);
+                } else {
+                    if (!e.isJsonObject()) return null;
+                    e = e.getAsJsonObject().get((String) s);
+                }
+            }
+            return e;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+}
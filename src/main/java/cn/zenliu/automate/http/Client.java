@@ -0,0 +1,135 @@
+package cn.zenliu.automate.http;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared HTTP client without a browser.<br/>
+ * The underlying client keeps a connection pool, HTTP/2 multiplexes requests over one connection per host.
+ * Requests in flight are limited by a semaphore. Synchronous callers wait for a permit, asynchronous requests
+ * without a free permit are queued and sent when one is released, so no caller thread is blocked.
+ *
+ * @author Zen.Liu
+ * @since 2024-12-21
+ */
+public final class Client {
+    private final Logger log;
+    private final HttpClient http;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private final int concurrency;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param concurrency max requests in flight
+     */
+    public Client(Logger log, HttpClient http, int concurrency) {
+        if (concurrency <= 0) throw new IllegalArgumentException("http concurrency must be positive");
+        this.log = log;
+        this.http = http;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    @SneakyThrows
+    public <T> HttpResponse<T> send(HttpRequest req, HttpResponse.BodyHandler<T> handler) {
+        permits.acquire();
+        try {
+            sent.increment();
+            return http.send(req, handler);
+        } catch (Exception ex) {
+            failed.increment();
+            throw ex;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * send without waiting for a permit or the response.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest req, HttpResponse.BodyHandler<T> handler) {
+        return sendAsync(req, handler, null);
+    }
+
+    /**
+     * send without waiting for a permit or the response. cancelling the returned future drops a queued request
+     * or cancels the exchange in flight.
+     *
+     * @param started called when the request leaves the queue and is sent, to time it without queueing
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest req, HttpResponse.BodyHandler<T> handler, @Nullable Runnable started) {
+        var f = new CompletableFuture<HttpResponse<T>>();
+        Runnable send = () -> {
+            if (f.isDone()) {
+                release();
+                return;
+            }
+            sent.increment();
+            try {
+                if (started != null) started.run();
+                var x = http.sendAsync(req, handler);
+                x.whenComplete((r, ex) -> {
+                    release();
+                    if (ex != null) {
+                        failed.increment();
+                        if (log.isDebugEnabled()) log.debug("{} {} failed", req.method(), req.uri(), ex);
+                        f.completeExceptionally(ex);
+                    } else f.complete(r);
+                });
+                f.whenComplete((r, ex) -> {
+                    if (f.isCancelled()) x.cancel(true);
+                });
+            } catch (RuntimeException ex) {
+                release();
+                failed.increment();
+                f.completeExceptionally(ex);
+            }
+        };
+        if (permits.tryAcquire()) send.run();
+        else {
+            waiting.add(send);
+            drain();
+        }
+        return f;
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    /**
+     * send queued requests while permits are free.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            var r = waiting.poll();
+            if (r == null) {
+                permits.release();
+                continue;
+            }
+            r.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Client[" + http.version() + ", concurrency=" + concurrency + ", inflight=" + (concurrency - permits.availablePermits()) + ", queued=" + waiting.size()
+                + ", sent=" + sent.sum() + ", failed=" + failed.sum() + "]";
+    }
+}
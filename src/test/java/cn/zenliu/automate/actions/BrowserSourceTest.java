@@ -0,0 +1,52 @@
+package cn.zenliu.automate.actions;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import com.typesafe.config.ConfigFactory;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * chrome and launch are exclusive, checked before touching playwright.
+ */
+class BrowserSourceTest {
+    Context ctx;
+
+    @BeforeEach
+    void start() {
+        ctx = FetchBenchMain.context();
+        // stand-ins, the checks fail before any of them is used
+        ctx.vars().put(Playwrights.PLAYWRIGHT, new Object());
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void stop() {
+        ctx.close();
+    }
+
+    void run(String hocon) {
+        Action.parseConf(Conf.of(ConfigFactory.parseString(hocon))).execute(ctx, ctx.log());
+    }
+
+    @Test
+    void launchRejectedWhenConnected() {
+        ctx.vars().put(Playwrights.CONNECTION, new Object());
+        var ex = assertThrows(IllegalStateException.class, () -> run("{action: launch}"));
+        assertTrue(ex.getMessage().contains("chrome and launch"), ex.getMessage());
+        assertFalse(ctx.vars().containsKey(Playwrights.LAUNCHER));
+    }
+
+    @Test
+    void chromeRejectedWhenLaunched() {
+        ctx.vars().put(Playwrights.LAUNCHER, new Object());
+        var ex = assertThrows(IllegalStateException.class, () -> run("{action: chrome, cdp: \"http://127.0.0.1:9\"}"));
+        assertTrue(ex.getMessage().contains("chrome and launch"), ex.getMessage());
+        assertFalse(ctx.vars().containsKey(Playwrights.CONNECTION));
+    }
+}
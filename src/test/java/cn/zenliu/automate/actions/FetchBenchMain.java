@@ -0,0 +1,81 @@
+package cn.zenliu.automate.actions;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import lombok.SneakyThrows;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs fetchBench against an embedded server on loopback, so the numbers measure the client and not the network.<br/>
+ * Arguments: requests (default 20000), concurrency (default 64), client concurrency (default 64). For example:
+ * {@code mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=cn.zenliu.automate.actions.FetchBenchMain -Dexec.args="20000 64"}
+ */
+public class FetchBenchMain {
+    static final Logger log = LoggerFactory.getLogger(FetchBenchMain.class);
+    static final byte[] BODY = "{\"id\":1,\"name\":\"bench\",\"items\":[1,2,3]}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @return started server answering any path with a small json body
+     */
+    @SneakyThrows
+    static HttpServer server() {
+        // without it small responses wait for the delayed ack, about 40ms each on linux
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        var s = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        s.createContext("/", x -> {
+            x.getRequestBody().readAllBytes();
+            x.getResponseHeaders().add("Content-Type", "application/json");
+            x.sendResponseHeaders(200, BODY.length);
+            try (var out = x.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        s.setExecutor(Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors())));
+        s.start();
+        return s;
+    }
+
+    static Context context() {
+        return new Context.context(log, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>(), Context.newExecutor());
+    }
+
+    static void run(Context ctx, String hocon) {
+        Action.parseConf(Conf.of(ConfigFactory.parseString(hocon))).execute(ctx, log);
+    }
+
+    /**
+     * @return report of fetchBench
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> bench(Context ctx, String url, int requests, int concurrency) {
+        run(ctx, "{action: fetchBench, url: \"" + url + "\", requests: " + requests + ", concurrency: " + concurrency + ", name: report}");
+        return ctx.require("report", Map.class);
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        var n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        var k = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        var limit = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        var s = server();
+        try (var ctx = context()) {
+            run(ctx, "{action: httpClient, http2: false, concurrency: " + limit + "}");
+            var report = bench(ctx, "http://127.0.0.1:" + s.getAddress().getPort() + "/bench", n, k);
+            System.out.println(report);
+        } finally {
+            s.stop(0);
+            ((java.util.concurrent.ExecutorService) s.getExecutor()).shutdownNow();
+        }
+    }
+}
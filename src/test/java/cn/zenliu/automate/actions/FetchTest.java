@@ -0,0 +1,157 @@
+package cn.zenliu.automate.actions;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import cn.zenliu.automate.http.Client;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fetch actions and the bench against the embedded server of {@link FetchBenchMain}.
+ */
+class FetchTest {
+    HttpServer server;
+    String base;
+    Context ctx;
+    final CountDownLatch slow = new CountDownLatch(1);
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() {
+        server = FetchBenchMain.server();
+        server.createContext("/ids", x -> {
+            var b = "{\"data\":{\"id\":18446744073709551617,\"items\":[{\"id\":1},{\"id\":2}]}}".getBytes(StandardCharsets.UTF_8);
+            x.sendResponseHeaders(200, b.length);
+            try (var out = x.getResponseBody()) {
+                out.write(b);
+            }
+        });
+        server.createContext("/slow", x -> {
+            try {
+                slow.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            }
+            x.sendResponseHeaders(204, -1);
+            x.close();
+        });
+        server.createContext("/missing", x -> {
+            x.sendResponseHeaders(404, -1);
+            x.close();
+        });
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        ctx = FetchBenchMain.context();
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void stop() {
+        slow.countDown();
+        ctx.close();
+        server.stop(0);
+        ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    static Action action(String hocon) {
+        return Action.parseConf(Conf.of(ConfigFactory.parseString(hocon)));
+    }
+
+    void run(String hocon) {
+        action(hocon).execute(ctx, ctx.log());
+    }
+
+    @Test
+    void storesStatusBodyAndJsonPaths() {
+        run("{action: fetch, url: \"" + base + "/ids\", status: code, extract {id: \"$.data.id\", last: \"$.data.items[-1].id\"}}");
+        assertEquals(200, ctx.require("code", Integer.class));
+        assertEquals(new BigInteger("18446744073709551617"), ctx.require("id", BigInteger.class));
+        assertEquals(2L, ctx.require("last", Long.class));
+        run("{action: fetch, url: \"" + base + "/ids\", response: text, extract {first: \"$.data.items[0].id\"}}");
+        assertTrue(ctx.require("text", String.class).startsWith("{\"data\""));
+        assertEquals(1L, ctx.require("first", Long.class));
+    }
+
+    @Test
+    @SneakyThrows
+    void streamsBodyToFile() {
+        var f = dir.resolve("out/body.json");
+        run("{action: fetch, url: \"" + base + "/bench\", file: \"" + f.toString().replace('\\', '/') + "\"}");
+        assertArrayEquals(FetchBenchMain.BODY, Files.readAllBytes(f));
+    }
+
+    @Test
+    @SneakyThrows
+    void asyncFetchWaitsForPermitWithoutBlockingCaller() {
+        run("{action: httpClient, http2: false, concurrency: 1}");
+        var first = action("{action: fetch, url: \"" + base + "/slow\", status: slowCode}").executeAsync(ctx, ctx.log()).toCompletableFuture();
+        var begin = System.nanoTime();
+        var second = action("{action: fetch, url: \"" + base + "/ids\", status: idsCode}").executeAsync(ctx, ctx.log()).toCompletableFuture();
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(1), "caller blocked on the client permit");
+        assertFalse(second.isDone());
+        slow.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(204, ctx.require("slowCode", Integer.class));
+        assertEquals(200, ctx.require("idsCode", Integer.class));
+    }
+
+    @Test
+    void asyncFetchFailsStageOnInvalidConfig() {
+        var f = action("{action: fetch, url: \"" + base + "/ids\", file: \"x.json\", response: text}").executeAsync(ctx, ctx.log()).toCompletableFuture();
+        var ex = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, ex.getCause());
+    }
+
+    @Test
+    @SneakyThrows
+    void sharedClientCreatedOnce() {
+        var n = 16;
+        var go = new CountDownLatch(1);
+        var fs = new ArrayList<Future<Client>>();
+        var pool = Executors.newFixedThreadPool(n);
+        try {
+            for (int i = 0; i < n; i++) fs.add(pool.submit(() -> {
+                go.await();
+                return Http.client(ctx);
+            }));
+            go.countDown();
+            var first = fs.get(0).get(10, TimeUnit.SECONDS);
+            for (var f : fs) assertSame(first, f.get(10, TimeUnit.SECONDS));
+            assertSame(first, ctx.require(Http.HTTP_CLIENT, Client.class));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void benchReportsSuccessfulLatency() {
+        run("{action: httpClient, http2: false, concurrency: 4}");
+        var ok = FetchBenchMain.bench(ctx, base + "/bench", 200, 8);
+        assertEquals(0, ok.get("errors"));
+        var p50 = (double) ok.get("p50");
+        assertTrue(p50 > 0 && p50 <= (double) ok.get("p99") && (double) ok.get("p99") <= (double) ok.get("max"), ok.toString());
+        var failed = FetchBenchMain.bench(ctx, base + "/missing", 50, 8);
+        assertEquals(50, failed.get("errors"));
+        assertTrue(Double.isNaN((double) failed.get("p50")), failed.toString());
+    }
+}
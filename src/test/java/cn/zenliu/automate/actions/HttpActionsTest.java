@@ -0,0 +1,124 @@
+package cn.zenliu.automate.actions;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import com.microsoft.playwright.BrowserContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.ConfigFactory;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HTTP actions against a local server, sharing cookies by the standalone request context or a browser context.
+ */
+class HttpActionsTest {
+    static final Logger log = LoggerFactory.getLogger(HttpActionsTest.class);
+    static HttpServer server;
+    static String base;
+    static Context ctx;
+
+    @BeforeAll
+    @SneakyThrows
+    static void start() {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/login", x -> {
+            x.getResponseHeaders().add("Set-Cookie", "sid=s1; Path=/");
+            reply(x, 200, "{\"ok\":true}");
+        });
+        server.createContext("/me", x -> {
+            var cookie = x.getRequestHeaders().getFirst("Cookie");
+            if (cookie == null || !cookie.contains("sid=s1")) reply(x, 401, "{\"error\":\"login required\"}");
+            else reply(x, 200, """
+                    {"user": {"id": 9007199254740993, "name": "a]b"}, "items": [{"id": 1}, {"id": 2}]}
+                    """);
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+        ctx = new Context.context(log, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>(), Context.newExecutor());
+        run("{action: playwright, property {PLAYWRIGHT_SKIP_BROWSER_DOWNLOAD: \"1\"}}");
+    }
+
+    @AfterAll
+    @SneakyThrows
+    static void stop() {
+        ctx.close();
+        server.stop(0);
+    }
+
+    @SneakyThrows
+    static void reply(HttpExchange x, int status, String body) {
+        var b = body.getBytes(StandardCharsets.UTF_8);
+        x.getResponseHeaders().add("Content-Type", "application/json");
+        x.sendResponseHeaders(status, b.length);
+        try (var out = x.getResponseBody()) {
+            out.write(b);
+        }
+    }
+
+    static void run(String hocon) {
+        Action.parseConf(Conf.of(ConfigFactory.parseString(hocon))).execute(ctx, log);
+    }
+
+    @Test
+    void cookiesSharedAcrossRequests() {
+        ctx.invalidate(Playwrights.REQUEST);
+        run("{action: httpGet, url: \"" + base + "/me\", status: meStatus}");
+        assertEquals(401, ctx.require("meStatus", Integer.class));
+        run("{action: httpPost, url: \"" + base + "/login\", body: \"{}\", status: loginStatus}");
+        assertEquals(200, ctx.require("loginStatus", Integer.class));
+        run("{action: httpGet, url: \"" + base + "/me\", status: meStatus, extract {id: \"$.user.id\", name: \"$['user']['name']\", last: \"$.items[-1].id\"}}");
+        assertEquals(200, ctx.require("meStatus", Integer.class));
+        assertEquals(9007199254740993L, ctx.require("id", Long.class));
+        assertEquals("a]b", ctx.require("name", String.class));
+        assertEquals(2L, ctx.require("last", Long.class));
+    }
+
+    @Test
+    void assertJsonPaths() {
+        run("{action: httpPost, url: \"" + base + "/login\", body: \"{}\"}");
+        run("{action: httpAssert, url: \"" + base + "/me\", json {\"$.user.id\": \"9007199254740993\", \"$.items[0].id\": \"1\", \"$.missing\": \"null\"}}");
+        var ex = assertThrows(IllegalStateException.class, () ->
+                run("{action: httpAssert, url: \"" + base + "/me\", json {\"$.items[0].id\": \"2\"}}"));
+        assertTrue(ex.getMessage().contains("$.items[0].id"), ex.getMessage());
+        assertThrows(IllegalStateException.class, () -> run("{action: httpAssert, url: \"" + base + "/nothing\"}"));
+    }
+
+    @Test
+    void cookiesSharedWithBrowserContext() {
+        try {
+            run("{action: launch}");
+        } catch (RuntimeException ex) {
+            Assumptions.abort("no browser installed: " + ex.getMessage().lines().findFirst().orElse(""));
+        }
+        try {
+            run("{action: contextCreate, name: shared}");
+            var cx = ctx.require(Playwrights.ContextPrefix + "shared", BrowserContext.class);
+            run("{action: httpPost, url: \"" + base + "/login\", context: shared, body: \"{}\"}");
+            assertTrue(cx.cookies(base).stream().anyMatch(c -> c.name.equals("sid") && c.value.equals("s1")));
+            cx.clearCookies();
+            run("{action: httpGet, url: \"" + base + "/me\", context: shared, status: sharedStatus}");
+            assertEquals(401, ctx.require("sharedStatus", Integer.class));
+            cx.addCookies(List.of(new com.microsoft.playwright.options.Cookie("sid", "s1").setUrl(base)));
+            run("{action: httpGet, url: \"" + base + "/me\", context: shared, status: sharedStatus}");
+            assertEquals(200, ctx.require("sharedStatus", Integer.class));
+        } finally {
+            ctx.invalidate(Playwrights.ContextPrefix + "shared");
+            ctx.invalidate(Playwrights.BROWSER);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package cn.zenliu.automate.browser;
+
+import cn.zenliu.automate.action.Action;
+import cn.zenliu.automate.context.Conf;
+import cn.zenliu.automate.context.Context;
+import com.typesafe.config.ConfigFactory;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records written by cases without a browser.
+ */
+class FlightRecorderTest {
+    static final Logger log = LoggerFactory.getLogger(FlightRecorderTest.class);
+    Context.context ctx;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void start() {
+        ctx = new Context.context(log, new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>(), Context.newExecutor());
+        Action.parseConf(Conf.of(ConfigFactory.parseString("{action: flightRecorder, dir: \"" + dir.resolve("records").toString().replace('\\', '/') + "\"}")))
+                .execute(ctx, log);
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void stop() {
+        ctx.close();
+    }
+
+    @SneakyThrows
+    Action parse(String name, String actions) {
+        var f = dir.resolve(name + ".conf");
+        Files.writeString(f, "actions: " + actions);
+        return ctx.parseFile(f.toString());
+    }
+
+    @SneakyThrows
+    List<Path> written() {
+        var d = dir.resolve("records");
+        if (!Files.exists(d)) return List.of();
+        try (var s = Files.list(d)) {
+            return s.toList();
+        }
+    }
+
+    @Test
+    void caughtFailureNotFlushed() {
+        var c = parse("caught", "[{action: tryCatch, actions: [{action: assert, expr: \"false\", message: expected}]}, {action: eval, expr: \"1\", name: x}]");
+        assertTrue(c.run(ctx).isEmpty());
+        assertEquals(List.of(), written());
+    }
+
+    @Test
+    @SneakyThrows
+    void unhandledFailureFlushedOnce() {
+        var c = parse("failed", "[{action: tryCatch, actions: [{action: assert, expr: \"false\", message: expected}]}, {action: assert, expr: \"false\", message: boom}]");
+        assertEquals("boom", c.run(ctx).orElseThrow().getMessage());
+        var w = written();
+        assertEquals(1, w.size(), w.toString());
+        var steps = Files.readString(w.get(0).resolve("steps.txt"));
+        assertTrue(steps.contains("FAILED java.lang.IllegalStateException: expected"), steps);
+        assertTrue(steps.contains("FAILED java.lang.IllegalStateException: boom"), steps);
+    }
+
+    @Test
+    @SneakyThrows
+    void recordsKeptPerCase() {
+        var rec = (FlightRecorder) ctx.recorder();
+        var act = Action.parseConf(Conf.of(ConfigFactory.parseString("{action: eval, expr: \"1\", name: x}")));
+        rec.begin(ctx, "a");
+        ctx.vars().put(Context.CASE, "a");
+        rec.record(ctx, "a", act, 1, null);
+        // another case begins while a is running
+        rec.begin(ctx, "b");
+        ctx.vars().put(Context.CASE, "b");
+        rec.record(ctx, "b", act, 1, null);
+        ctx.vars().put(Context.CASE, "a");
+        rec.flush(ctx, "a", new IllegalStateException("a failed"));
+        var steps = Files.readString(written().get(0).resolve("steps.txt"));
+        assertTrue(steps.contains(" a.eval "), steps);
+        assertFalse(steps.contains(" b.eval "), steps);
+    }
+}
@@ -0,0 +1,233 @@
+package cn.zenliu.automate.browser;
+
+import com.microsoft.playwright.APIResponse;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Request;
+import com.microsoft.playwright.Route;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the cache with stand-in routes against a local server, no browser needed.
+ */
+class ResponseCacheTest {
+    static HttpServer server;
+    static String base;
+    static final HttpClient http = HttpClient.newHttpClient();
+    static final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    static final AtomicInteger notModified = new AtomicInteger();
+
+    @TempDir
+    Path dir;
+
+    record Served(int status, String body, boolean fallback) {
+    }
+
+    @BeforeAll
+    @SneakyThrows
+    static void start() {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/static", x -> reply(x, 200, "static", "Cache-Control", "max-age=60", "ETag", "\"s1\""));
+        server.createContext("/etag", x -> {
+            if ("\"e1\"".equals(x.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                reply(x, 304, null, "ETag", "\"e1\"");
+            } else reply(x, 200, "etag", "Cache-Control", "no-cache", "ETag", "\"e1\"");
+        });
+        server.createContext("/private", x -> reply(x, 200, "private", "Cache-Control", "private, max-age=60"));
+        server.createContext("/vary", x -> reply(x, 200, "vary", "Cache-Control", "max-age=60", "Vary", "User-Agent"));
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterAll
+    static void stop() {
+        server.stop(0);
+    }
+
+    @BeforeEach
+    void reset() {
+        hits.clear();
+        notModified.set(0);
+    }
+
+    @SneakyThrows
+    static void reply(HttpExchange x, int status, String body, String... headers) {
+        hits.computeIfAbsent(x.getRequestURI().getPath(), k -> new AtomicInteger()).incrementAndGet();
+        for (int i = 0; i < headers.length; i += 2) x.getResponseHeaders().add(headers[i], headers[i + 1]);
+        var b = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        x.sendResponseHeaders(status, b.length == 0 ? -1 : b.length);
+        try (var out = x.getResponseBody()) {
+            out.write(b);
+        }
+    }
+
+    static int hits(String path) {
+        var n = hits.get(path);
+        return n == null ? 0 : n.get();
+    }
+
+    ResponseCache cache() {
+        return new ResponseCache(LoggerFactory.getLogger(ResponseCacheTest.class), dir, null, 1024 * 1024);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, BiFunction<Method, Object[], Object> f) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, m, a) -> f.apply(m, a));
+    }
+
+    /**
+     * send a GET through the cache as a page would.
+     *
+     * @param secret headers the browser adds but {@link Request#headers()} hides, such as cookie
+     */
+    static Served get(ResponseCache c, String path, Map<String, String> secret) {
+        return get(c::handle, path, secret);
+    }
+
+    /**
+     * register the cache on a stand-in page, as pageOpen does for each page of any browser context.
+     *
+     * @return the route handler the page got
+     */
+    @SuppressWarnings("unchecked")
+    static Consumer<Route> page(ResponseCache c) {
+        var handler = new AtomicReference<Consumer<Route>>();
+        c.apply(proxy(Page.class, (m, a) -> {
+            if (!m.getName().equals("route")) throw new UnsupportedOperationException(m.getName());
+            handler.set((Consumer<Route>) a[1]);
+            return null;
+        }));
+        assertNotNull(handler.get(), "route not registered");
+        return handler.get();
+    }
+
+    static Served get(Consumer<Route> page, String path, Map<String, String> secret) {
+        var url = base + path;
+        var visible = Map.of("user-agent", "test");
+        var all = new LinkedHashMap<>(visible);
+        all.putAll(secret);
+        var out = new Served[1];
+        var req = proxy(Request.class, (m, a) -> switch (m.getName()) {
+            case "url" -> url;
+            case "method" -> "GET";
+            case "headers" -> visible;
+            case "allHeaders" -> all;
+            default -> throw new UnsupportedOperationException(m.getName());
+        });
+        var route = proxy(Route.class, (m, a) -> switch (m.getName()) {
+            case "request" -> req;
+            case "fetch" -> fetch(url, ((Route.FetchOptions) a[0]).headers);
+            case "fulfill" -> {
+                var o = (Route.FulfillOptions) a[0];
+                var body = o.bodyBytes != null ? o.bodyBytes : o.response.body();
+                out[0] = new Served(o.status != null ? o.status : o.response.status(), new String(body, StandardCharsets.UTF_8), false);
+                yield null;
+            }
+            case "fallback" -> {
+                out[0] = new Served(0, null, true);
+                yield null;
+            }
+            default -> throw new UnsupportedOperationException(m.getName());
+        });
+        page.accept(route);
+        assertNotNull(out[0], "route not handled");
+        return out[0];
+    }
+
+    @SneakyThrows
+    static APIResponse fetch(String url, Map<String, String> headers) {
+        var b = HttpRequest.newBuilder(URI.create(url));
+        headers.forEach(b::header);
+        var r = http.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+        var h = new LinkedHashMap<String, String>();
+        r.headers().map().forEach((k, v) -> h.put(k.toLowerCase(), String.join(", ", v)));
+        return proxy(APIResponse.class, (m, a) -> switch (m.getName()) {
+            case "status" -> r.statusCode();
+            case "headers" -> h;
+            case "body" -> r.body();
+            case "dispose" -> null;
+            default -> throw new UnsupportedOperationException(m.getName());
+        });
+    }
+
+    @Test
+    void freshEntryServedWithoutRequest() {
+        var c = cache();
+        assertEquals(new Served(200, "static", false), get(c, "/static", Map.of()));
+        assertEquals(new Served(200, "static", false), get(c, "/static", Map.of()));
+        assertEquals(1, hits("/static"));
+    }
+
+    @Test
+    void freshEntryServedFromDiskByNextRun() {
+        get(cache(), "/static", Map.of());
+        assertEquals(new Served(200, "static", false), get(cache(), "/static", Map.of()));
+        assertEquals(1, hits("/static"));
+    }
+
+    @Test
+    void noCacheEntryRevalidated() {
+        var c = cache();
+        assertEquals(new Served(200, "etag", false), get(c, "/etag", Map.of()));
+        assertEquals(new Served(200, "etag", false), get(c, "/etag", Map.of()));
+        assertEquals(2, hits("/etag"));
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    void entriesSharedAcrossPagesOfContexts() {
+        var c = cache();
+        var a = page(c);
+        var b = page(c);
+        assertEquals(new Served(200, "static", false), get(a, "/static", Map.of()));
+        assertEquals(new Served(200, "static", false), get(b, "/static", Map.of()));
+        assertEquals(1, hits("/static"));
+    }
+
+    @Test
+    void requestsWithCredentialsFallBack() {
+        var c = cache();
+        get(c, "/static", Map.of());
+        assertTrue(get(c, "/static", Map.of("cookie", "sid=1")).fallback());
+        assertTrue(get(c, "/static", Map.of("authorization", "Bearer x")).fallback());
+        assertEquals(1, hits("/static"));
+    }
+
+    @Test
+    void uncacheableResponsesFallBackAfterFirst() {
+        var c = cache();
+        assertEquals(new Served(200, "private", false), get(c, "/private", Map.of()));
+        assertTrue(get(c, "/private", Map.of()).fallback());
+        assertEquals(new Served(200, "vary", false), get(c, "/vary", Map.of()));
+        assertTrue(get(c, "/vary", Map.of()).fallback());
+        assertEquals(1, hits("/private"));
+        assertEquals(1, hits("/vary"));
+    }
+}
@@ -0,0 +1,106 @@
+package cn.zenliu.automate.expr;
+
+import cn.zenliu.automate.context.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExprTest {
+    Context ctx;
+
+    @BeforeEach
+    void start() {
+        ctx = new Context.context(LoggerFactory.getLogger(ExprTest.class), new ConcurrentHashMap<>(), new ConcurrentLinkedQueue<>(), new ConcurrentHashMap<>(), Context.newExecutor());
+        ctx.vars().put("n", 3L);
+        ctx.vars().put("s", "order-1234.json");
+        ctx.vars().put("user.name", "Zen");
+        ctx.vars().put("Page::main", "page");
+        ctx.vars().put("items", List.of(1, 2));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        ctx.close();
+    }
+
+    Object eval(String src) {
+        return Expr.parse(src).eval(ctx);
+    }
+
+    @Test
+    void literalsAndVariables() {
+        assertEquals("a'b", eval("'a\\'b'"));
+        assertEquals("a\"b\n", eval("\"a\\\"b\\n\""));
+        assertEquals(12L, eval("12"));
+        assertEquals(1.5, eval("1.5"));
+        assertNull(eval("null"));
+        assertEquals("Zen", eval("user.name"));
+        assertEquals("page", eval("var('Page::main')"));
+        assertNull(eval("missing"));
+    }
+
+    @Test
+    void precedence() {
+        assertEquals(7L, eval("1 + 2 * 3"));
+        assertEquals(9L, eval("(1 + 2) * 3"));
+        assertEquals(-1L, eval("2 - 3"));
+        assertEquals(1L, eval("7 % n"));
+        assertEquals(true, eval("1 + 1 == 2 && n > 2 || false"));
+        assertEquals(true, eval("!false && !(n < 3)"));
+        assertEquals(false, eval("n >= 4 || n != 3"));
+        assertEquals("n=3", eval("'n=' + n"));
+        assertTrue(Expr.parse("len(items) == 2 && exists('s')").test(ctx));
+    }
+
+    @Test
+    void constantsFolded() {
+        assertEquals(new Expr.Const(7L), Expr.parse("1 + 2 * 3"));
+        assertEquals(new Expr.Const(true), Expr.parse("!(1 > 2) && 'a' == 'a'"));
+        assertInstanceOf(Expr.Var.class, Expr.parse("var('Page::main')"));
+        // failing constants are kept and fail when evaluated
+        var e = Expr.parse("1 % 0");
+        assertInstanceOf(Expr.Arith.class, e);
+        assertThrows(ArithmeticException.class, () -> e.eval(ctx));
+    }
+
+    @Test
+    void regexLiteralsKeepEscapes() {
+        assertEquals("\\d+", eval("'\\d+'"));
+        assertEquals("a\\b", eval("'a\\\\b'"));
+        assertEquals(true, eval("matches(s, 'order-\\d+\\.json')"));
+        assertEquals(false, eval("matches('order-12x4json', 'order-\\d+\\.json')"));
+        assertEquals(true, eval("find(s, '\\d{4}')"));
+        assertEquals(false, eval("find('order', '\\d')"));
+        assertEquals(true, eval("s =~ '\\w+-\\d+\\.json'"));
+        assertEquals(false, eval("'order-1234xjson' =~ '\\w+-\\d+\\.json'"));
+    }
+
+    @Test
+    void literalPatternsBound() {
+        var m = assertInstanceOf(Expr.Match.class, Expr.parse("matches(s, '\\d+')"));
+        assertEquals("\\d+", m.pattern().pattern());
+        assertInstanceOf(Expr.Find.class, Expr.parse("find(s, '\\d+')"));
+        assertInstanceOf(Expr.Match.class, Expr.parse("s =~ '\\d+'"));
+        ctx.vars().put("p", "\\w+-\\d+\\.json");
+        assertInstanceOf(Expr.Call.class, Expr.parse("matches(s, p)"));
+        assertEquals(true, eval("matches(s, p)"));
+        assertEquals(true, eval("s =~ p"));
+    }
+
+    @Test
+    void errors() {
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("1 +"));
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("'open"));
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("nothing(1)"));
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("len(1, 2)"));
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("(1"));
+        assertThrows(IllegalArgumentException.class, () -> Expr.parse("matches(s, '(')"));
+    }
+}
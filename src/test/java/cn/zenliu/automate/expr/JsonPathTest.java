@@ -0,0 +1,62 @@
+package cn.zenliu.automate.expr;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPathTest {
+    static final String DOC = """
+            {"data": {"items": [{"id": 1}, {"id": 9007199254740993}, {"id": 18446744073709551617}],
+             "a]b": "quoted", "a.b": "dotted", "price": 1.5, "ok": true, "none": null}}
+            """;
+
+    static Object value(String path) {
+        return JsonPath.value(JsonPath.parse(path).select(JsonParser.parseString(DOC)));
+    }
+
+    @Test
+    void members() {
+        assertEquals(1L, value("$.data.items[0].id"));
+        assertEquals(1L, value("data.items[0].id"));
+        assertEquals("quoted", value("$.data['a]b']"));
+        assertEquals("quoted", value("$.data[ \"a]b\" ]"));
+        assertEquals("dotted", value("$['data']['a.b']"));
+        assertEquals(true, value("$.data.ok"));
+        assertEquals(1.5, value("$.data.price"));
+    }
+
+    @Test
+    void missing() {
+        assertNull(value("$.data.none"));
+        assertNull(value("$.data.nothing.id"));
+        assertNull(value("$.data.items[5]"));
+        assertNull(value("$.data.ok[0]"));
+    }
+
+    @Test
+    void negativeIndex() {
+        assertEquals(1L, value("$.data.items[-3].id"));
+    }
+
+    @Test
+    void integralNumbersKeepPrecision() {
+        assertEquals(9007199254740993L, value("$.data.items[1].id"));
+        assertEquals(new BigInteger("18446744073709551617"), value("$.data.items[-1].id"));
+    }
+
+    @Test
+    void containers() {
+        assertEquals("{\"id\":1}", value("$.data.items[0]"));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.parse("$.data['a]b"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.parse("$.data[x]"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.parse("$.data[0"));
+        assertThrows(IllegalArgumentException.class, () -> JsonPath.parse("$..data"));
+    }
+}